@@ -0,0 +1,38 @@
+package com.chadate.funeralmagic;
+
+import net.neoforged.neoforge.common.ModConfigSpec;
+
+/**
+ * 模组配置
+ */
+public class Config {
+
+    private static final ModConfigSpec.Builder BUILDER = new ModConfigSpec.Builder();
+
+    /**
+     * 在这个距离以内的观察者收到护盾的每一次变化
+     */
+    public static final ModConfigSpec.DoubleValue FULL_RATE_SYNC_DISTANCE = BUILDER
+            .comment("Players within this many blocks of a shielded entity receive every shield change.",
+                    "The shield's owner and players riding with it always do.")
+            .defineInRange("fullRateSyncDistance", 24.0, 0.0, 512.0);
+
+    /**
+     * 远处的观察者两次护盾同步之间至少间隔的tick数
+     */
+    public static final ModConfigSpec.IntValue DISTANT_SYNC_INTERVAL = BUILDER
+            .comment("Minimum ticks between shield updates sent to players farther away than fullRateSyncDistance.",
+                    "Changes in between are merged and the latest state is sent. Deactivation and shatter are never delayed.",
+                    "1 disables throttling.")
+            .defineInRange("distantSyncInterval", 5, 1, 100);
+
+    /**
+     * 网络包统计写入日志文件的间隔（秒），0 表示不写
+     */
+    public static final ModConfigSpec.IntValue NETWORK_METRICS_LOG_INTERVAL = BUILDER
+            .comment("Seconds between dumps of per-payload network metrics to logs/prismaticshield-network.log.",
+                    "0 disables the log file; the numbers are still available through /shield network.")
+            .defineInRange("networkMetricsLogInterval", 300, 0, 86400);
+
+    static final ModConfigSpec SPEC = BUILDER.build();
+}
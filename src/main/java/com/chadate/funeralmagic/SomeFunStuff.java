@@ -8,7 +8,9 @@ import com.chadate.funeralmagic.command.ShieldCommand;
 import com.mojang.logging.LogUtils;
 
 import net.neoforged.bus.api.IEventBus;
+import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.common.Mod;
+import net.neoforged.fml.config.ModConfig;
 import net.neoforged.neoforge.common.NeoForge;
 
 @Mod(SomeFunStuff.MODID)
@@ -18,10 +20,12 @@ public class SomeFunStuff {
 
     public static final Logger LOGGER = LogUtils.getLogger();
 
-    public SomeFunStuff(IEventBus modEventBus) {
+    public SomeFunStuff(IEventBus modEventBus, ModContainer modContainer) {
 
         ShieldCapabilities.register(modEventBus);
 
+        modContainer.registerConfig(ModConfig.Type.COMMON, Config.SPEC);
+
         NeoForge.EVENT_BUS.addListener(this::onRegisterCommands);
 
     }
@@ -1,13 +1,13 @@
 package com.chadate.funeralmagic.api;
 
 import net.minecraft.world.entity.Entity;
-import net.neoforged.neoforge.network.PacketDistributor;
+import net.minecraft.world.level.Level;
 
 import javax.annotation.Nullable;
 
 import com.chadate.funeralmagic.capability.ShieldCapabilities;
 import com.chadate.funeralmagic.capability.ShieldCapability;
-import com.chadate.funeralmagic.network.ShieldDataSyncPacket;
+import com.chadate.funeralmagic.server.ShieldRegistry;
 
 /**
  * 护盾系统公开API
@@ -48,8 +48,7 @@ public class ShieldAPI {
         if (entity == null) {
             return false;
         }
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
-        return shield != null && shield.isShieldActive();
+        return ShieldCapabilities.hasActiveShield(entity);
     }
 
     /**
@@ -62,8 +61,7 @@ public class ShieldAPI {
         if (entity == null) {
             return false;
         }
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
-        return shield != null;
+        return entity.hasData(ShieldCapabilities.SHIELD_ATTACHMENT);
     }
 
     /**
@@ -77,7 +75,7 @@ public class ShieldAPI {
         if (entity == null) {
             return null;
         }
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         if (shield == null) {
             return null;
         }
@@ -88,7 +86,7 @@ public class ShieldAPI {
      * 给实体添加护盾
      * 
      * 如果实体已经有护盾，会覆盖原有的护盾数据。
-     * 在多人服务器上会自动同步给所有玩家。
+     * 在多人服务器上会在本tick结束时自动同步给能看到该实体的玩家。
      * 
      * @param entity 目标实体
      * @param radius 护盾半径（建议范围：0.5 ~ 20.0）
@@ -115,8 +113,7 @@ public class ShieldAPI {
         
         try {
             ShieldCapability newShield = new ShieldCapability(active, radius, strength);
-            entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-            syncToAllPlayers(entity, newShield);
+            ShieldCapabilities.setShield(entity, newShield);
             return true;
         } catch (Exception e) {
             return false;
@@ -167,15 +164,15 @@ public class ShieldAPI {
             return false;
         }
         
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        // 还没有护盾的实体从默认护盾开始，与读取不同，写操作总是会附加护盾
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         if (shield == null) {
-            return false;
+            shield = ShieldCapability.DEFAULT;
         }
         
         try {
             ShieldCapability newShield = shield.withActive(active);
-            entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-            syncToAllPlayers(entity, newShield);
+            ShieldCapabilities.setShield(entity, newShield);
             return true;
         } catch (Exception e) {
             return false;
@@ -194,15 +191,14 @@ public class ShieldAPI {
             return false;
         }
         
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         if (shield == null) {
-            return false;
+            shield = ShieldCapability.DEFAULT;
         }
         
         try {
             ShieldCapability newShield = shield.withRadius(radius);
-            entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-            syncToAllPlayers(entity, newShield);
+            ShieldCapabilities.setShield(entity, newShield);
             return true;
         } catch (Exception e) {
             return false;
@@ -221,15 +217,14 @@ public class ShieldAPI {
             return false;
         }
         
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         if (shield == null) {
-            return false;
+            shield = ShieldCapability.DEFAULT;
         }
         
         try {
             ShieldCapability newShield = shield.withStrength(strength);
-            entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-            syncToAllPlayers(entity, newShield);
+            ShieldCapabilities.setShield(entity, newShield);
             return true;
         } catch (Exception e) {
             return false;
@@ -250,7 +245,7 @@ public class ShieldAPI {
             return false;
         }
         
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         if (shield == null || !shield.isShieldActive()) {
             return false;
         }
@@ -258,8 +253,7 @@ public class ShieldAPI {
         try {
             if (shield.canConsumeStrength(amount)) {
                 ShieldCapability newShield = shield.consumeStrength(amount);
-                entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-                syncToAllPlayers(entity, newShield);
+                ShieldCapabilities.setShield(entity, newShield);
                 return true;
             }
             return false;
@@ -280,16 +274,15 @@ public class ShieldAPI {
             return false;
         }
         
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         if (shield == null) {
-            return false;
+            shield = ShieldCapability.DEFAULT;
         }
         
         try {
             int newStrength = Math.min(10000, shield.strength() + amount); // 上限10000
             ShieldCapability newShield = shield.withStrength(newStrength);
-            entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-            syncToAllPlayers(entity, newShield);
+            ShieldCapabilities.setShield(entity, newShield);
             return true;
         } catch (Exception e) {
             return false;
@@ -307,9 +300,9 @@ public class ShieldAPI {
             return false;
         }
         
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         if (shield == null) {
-            return false;
+            shield = ShieldCapability.DEFAULT;
         }
         
         boolean newState = !shield.isShieldActive();
@@ -327,7 +320,7 @@ public class ShieldAPI {
         if (entity == null) {
             return 0.0;
         }
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         return shield != null ? shield.radius() : 0.0;
     }
 
@@ -341,26 +334,37 @@ public class ShieldAPI {
         if (entity == null) {
             return 0;
         }
-        ShieldCapability shield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(entity);
         return shield != null ? shield.strength() : 0;
     }
 
     /**
-     * 同步护盾数据到所有客户端
-     * 内部方法，自动在修改护盾时调用
+     * 获取维度中激活的护盾数量
+     * 
+     * 计数在护盾激活、停用、耗尽以及实体卸载、跨维度传送时实时更新，查询开销为O(1)。
+     * 只在服务端有效，客户端维度始终返回0。
+     * 
+     * @param level 要查询的维度
+     * @return 激活的护盾数量
      */
-    private static void syncToAllPlayers(Entity entity, ShieldCapability shield) {
-        if (entity.level().isClientSide) {
-            return;
+    public static int getActiveShieldCount(Level level) {
+        if (level == null) {
+            return 0;
         }
-        
-        ShieldDataSyncPacket packet = new ShieldDataSyncPacket(
-            entity.getId(),
-            shield.active(),
-            shield.radius(),
-            shield.strength()
-        );
-        PacketDistributor.sendToAllPlayers(packet);
+        return ShieldRegistry.count(level);
+    }
+
+    /**
+     * 检查维度中是否有激活的护盾
+     * 
+     * 没有护盾的维度可以跳过所有和护盾相关的逻辑。
+     * 只在服务端有效，客户端维度始终返回false。
+     * 
+     * @param level 要查询的维度
+     * @return 如果维度中至少有一个激活的护盾返回true
+     */
+    public static boolean hasActiveShields(Level level) {
+        return getActiveShieldCount(level) > 0;
     }
 
     /**
@@ -1,5 +1,7 @@
 package com.chadate.funeralmagic.capability;
 
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
 import net.neoforged.neoforge.attachment.AttachmentType;
 import net.neoforged.bus.api.IEventBus;
 import net.neoforged.neoforge.registries.DeferredRegister;
@@ -7,7 +9,11 @@ import net.neoforged.neoforge.registries.NeoForgeRegistries;
 
 import java.util.function.Supplier;
 
+import javax.annotation.Nullable;
+
 import com.chadate.funeralmagic.SomeFunStuff;
+import com.chadate.funeralmagic.server.ShieldRegistry;
+import com.chadate.funeralmagic.server.ShieldSyncQueue;
 
 /**
  * 护盾附件类型注册
@@ -20,11 +26,44 @@ public class ShieldCapabilities {
     public static final Supplier<AttachmentType<ShieldCapability>> SHIELD_ATTACHMENT = 
         ATTACHMENT_TYPES.register("shield_capability", () -> 
             AttachmentType.builder(() -> ShieldCapability.DEFAULT)
-                .serialize(ShieldCapability.CODEC)
+                // 只保存激活的护盾，默认护盾和未激活的护盾不写入区块NBT
+                .serialize(ShieldCapability.CODEC, ShieldCapability::isShieldActive)
                 .build()
         );
 
     public static void register(IEventBus modEventBus) {
         ATTACHMENT_TYPES.register(modEventBus);
     }
+
+    /**
+     * 获取实体的护盾数据
+     * 与 getData 不同，实体没有护盾时不会附加默认护盾
+     *
+     * @return 护盾数据，实体没有护盾附件时返回null
+     */
+    @Nullable
+    public static ShieldCapability getShield(Entity entity) {
+        return entity.hasData(SHIELD_ATTACHMENT) ? entity.getData(SHIELD_ATTACHMENT) : null;
+    }
+
+    /**
+     * 检查实体是否拥有激活的护盾（不会附加默认护盾）
+     */
+    public static boolean hasActiveShield(Entity entity) {
+        ShieldCapability shield = getShield(entity);
+        return shield != null && shield.isShieldActive();
+    }
+
+    /**
+     * 设置实体的护盾数据
+     * 服务端所有护盾修改都应该经过这里，以便同步更新维度的护盾注册表，
+     * 并在服务器tick结束时把最终状态同步给客户端
+     */
+    public static void setShield(Entity entity, ShieldCapability shield) {
+        entity.setData(SHIELD_ATTACHMENT, shield);
+        if (entity.level() instanceof ServerLevel serverLevel) {
+            ShieldRegistry.get(serverLevel).update(entity, shield);
+            ShieldSyncQueue.markDirty(entity);
+        }
+    }
 }
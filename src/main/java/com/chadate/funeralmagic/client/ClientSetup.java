@@ -1,6 +1,7 @@
 package com.chadate.funeralmagic.client;
 
 import com.chadate.funeralmagic.SomeFunStuff;
+import com.chadate.funeralmagic.client.render.ShieldShaders;
 
 import net.minecraft.client.Minecraft;
 import net.neoforged.api.distmarker.Dist;
@@ -10,8 +11,12 @@ import net.neoforged.fml.event.lifecycle.FMLClientSetupEvent;
 import net.neoforged.neoforge.client.event.ClientTickEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.neoforged.neoforge.client.event.ClientPlayerNetworkEvent;
+import net.neoforged.neoforge.client.event.RegisterShadersEvent;
+import net.neoforged.neoforge.event.entity.EntityJoinLevelEvent;
 import net.neoforged.neoforge.event.level.LevelEvent;
 
+import java.io.IOException;
+
 /**
  * 客户端初始化
  * 只在客户端执行的初始化代码
@@ -39,16 +44,34 @@ public class ClientSetup {
         });
         NeoForge.EVENT_BUS.addListener((ClientPlayerNetworkEvent.LoggingOut e) -> {
             com.chadate.funeralmagic.client.render.ShieldImpactEffect.clear();
+            PendingShieldStates.clear();
         });
         // 客户端关卡加载（进入世界/切换维度后）清空一次
         NeoForge.EVENT_BUS.addListener((LevelEvent.Load e) -> {
             if (e.getLevel().isClientSide()) {
                 com.chadate.funeralmagic.client.render.ShieldImpactEffect.clear();
+                PendingShieldStates.clear();
+            }
+        });
+
+        // 实体加入客户端维度时应用快照中暂存的护盾状态
+        NeoForge.EVENT_BUS.addListener((EntityJoinLevelEvent e) -> {
+            if (e.getLevel().isClientSide()) {
+                PendingShieldStates.apply(e.getEntity());
             }
         });
+        NeoForge.EVENT_BUS.addListener((ClientTickEvent.Post e) -> PendingShieldStates.expire());
 
     }
 
+    /**
+     * 注册护盾着色器
+     */
+    @SubscribeEvent
+    public static void onRegisterShaders(RegisterShadersEvent event) throws IOException {
+        ShieldShaders.register(event);
+    }
+
     /**
      * 测试客户端是否能读取护盾数据
      */
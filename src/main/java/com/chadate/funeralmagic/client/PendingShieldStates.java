@@ -0,0 +1,85 @@
+package com.chadate.funeralmagic.client;
+
+import com.chadate.funeralmagic.capability.ShieldCapabilities;
+import com.chadate.funeralmagic.capability.ShieldCapability;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.world.entity.Entity;
+
+/**
+ * 客户端暂存的护盾状态
+ *
+ * 登录或切换维度时的护盾快照通常先于实体生成包到达，此时客户端还没有这些实体。
+ * 快照条目先暂存在这里，实体加入客户端维度时再应用；
+ * 一段时间内没有出现的实体（已经离开追踪范围）会被丢弃。
+ */
+public final class PendingShieldStates {
+
+    /**
+     * 暂存条目的有效时间（毫秒）
+     */
+    private static final long TIMEOUT_MS = 10_000;
+
+    /**
+     * Key: 实体ID
+     */
+    private static final Int2ObjectMap<Pending> PENDING = new Int2ObjectOpenHashMap<>();
+
+    private PendingShieldStates() {
+    }
+
+    private record Pending(ShieldCapability shield, long receivedAt) {
+    }
+
+    /**
+     * 暂存一个还没有加入客户端维度的实体的护盾状态，替换之前暂存的状态
+     * 未激活的状态也要暂存，实体加入时它会覆盖掉更早的激活状态
+     */
+    public static void put(int entityId, boolean active, double radius, int strength) {
+        PENDING.put(entityId, new Pending(new ShieldCapability(active, radius, strength), System.currentTimeMillis()));
+    }
+
+    /**
+     * 收到实体的直接同步后，之前暂存的状态已经过时
+     */
+    public static void remove(int entityId) {
+        if (!PENDING.isEmpty()) {
+            PENDING.remove(entityId);
+        }
+    }
+
+    /**
+     * 实体加入客户端维度时应用暂存的护盾状态
+     */
+    public static void apply(Entity entity) {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+
+        Pending pending = PENDING.remove(entity.getId());
+        if (pending != null && pending.shield().active()
+                && System.currentTimeMillis() - pending.receivedAt() <= TIMEOUT_MS) {
+            entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, pending.shield());
+        }
+    }
+
+    /**
+     * 丢弃过期的条目
+     */
+    public static void expire() {
+        if (PENDING.isEmpty()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        PENDING.values().removeIf(pending -> now - pending.receivedAt() > TIMEOUT_MS);
+    }
+
+    /**
+     * 登出或切换维度时清空
+     */
+    public static void clear() {
+        PENDING.clear();
+    }
+}
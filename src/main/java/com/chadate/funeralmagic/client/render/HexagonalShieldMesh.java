@@ -2,238 +2,239 @@ package com.chadate.funeralmagic.client.render;
 
 import com.mojang.blaze3d.vertex.VertexConsumer;
 import net.minecraft.util.Mth;
-import net.minecraft.world.phys.Vec3;
-import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class HexagonalShieldMesh {
 
-       private static final float LINE_WIDTH = 0.025f; // 线条宽度
+       static final float LINE_WIDTH = 0.025f; // 线条宽度（格，与护盾半径无关）
+
+       static final int MAX_SUBDIVISION_LEVEL = 3;
 
        private static int subdivisionLevel = 2;
 
+       /**
+        * 每个细分级别的单位半径测地线球，第一次使用时构建
+        */
+       private static final GeodesicSphere[] SPHERES = new GeodesicSphere[MAX_SUBDIVISION_LEVEL + 1];
+
        public static void updateSubdivisionLevel(int level) {
-              subdivisionLevel = Math.max(0, Math.min(3, level));
+              subdivisionLevel = Math.max(0, Math.min(MAX_SUBDIVISION_LEVEL, level));
        }
 
-       public static void renderHexagonalShield(VertexConsumer consumer, Matrix4f matrix,
-                     double radius, float r, float g, float b,
-                     float alpha, float time, Vec3 shieldCenter, int entityId) {
-
-              GeodesicSphere sphere = new GeodesicSphere((float) radius, subdivisionLevel);
-
-              // 渲染所有边
-              for (Edge edge : sphere.edges) {
-                     Vec3 start = edge.v1;
-                     Vec3 end = edge.v2;
-
-                     // 计算边的中点位置
-                     Vec3 midPoint = new Vec3(
-                                   (start.x + end.x) * 0.5,
-                                   (start.y + end.y) * 0.5,
-                                   (start.z + end.z) * 0.5);
-
-                     // 计算能量效果
-                     float energyFlow = calculateEnergyFlow(midPoint, time, edge.index / 20, edge.index % 20);
-                     float impactInfluence = ShieldImpactEffect.getImpactInfluence(
-                                   shieldCenter.add(midPoint), shieldCenter, radius);
-                     float flashIntensity = ShieldImpactEffect.getFlashIntensity(
-                                   entityId, shieldCenter.add(midPoint), shieldCenter, radius);
+       /**
+        * 获取单位半径的测地线球（按细分级别缓存）
+        */
+       static GeodesicSphere getSphere(int level) {
+              GeodesicSphere sphere = SPHERES[level];
+              if (sphere == null) {
+                     sphere = new GeodesicSphere(level);
+                     SPHERES[level] = sphere;
+              }
+              return sphere;
+       }
 
-                     float brightness = 1.0f + energyFlow * 0.5f + impactInfluence * 5.0f + flashIntensity * 8.0f;
-                     float lineAlpha = alpha * (0.6f + energyFlow * 0.4f + impactInfluence * 2.0f);
+       public static int getSubdivisionLevel() {
+              return subdivisionLevel;
+       }
 
-                     // 渲染边
-                     renderLine(consumer, matrix, start, end,
-                                   r * brightness, g * brightness, b * brightness, lineAlpha);
+       /**
+        * 把单位半径的六边形网格写入静态顶点缓冲
+        * 颜色由每个护盾的实例数据提供；顶点颜色的红色通道存边的位置哈希，其余三个通道存线条展开方向，法线存边的弦中点。
+        * 顶点位于边的端点上，energy_shield 顶点着色器按 LineWidth / 半径 沿展开方向偏移，
+        * 线条宽度与护盾半径无关；能量流动和受击闪光由片段着色器计算
+        */
+       static void bakeUnitLattice(VertexConsumer consumer, int level) {
+              float[] data = getSphere(level).edgeData;
+              for (int offset = 0; offset < data.length; offset += GeodesicSphere.STRIDE) {
+                     float startX = data[offset + GeodesicSphere.START];
+                     float startY = data[offset + GeodesicSphere.START + 1];
+                     float startZ = data[offset + GeodesicSphere.START + 2];
+                     float endX = data[offset + GeodesicSphere.END];
+                     float endY = data[offset + GeodesicSphere.END + 1];
+                     float endZ = data[offset + GeodesicSphere.END + 2];
+
+                     float sideX = data[offset + GeodesicSphere.PERPENDICULAR];
+                     float sideY = data[offset + GeodesicSphere.PERPENDICULAR + 1];
+                     float sideZ = data[offset + GeodesicSphere.PERPENDICULAR + 2];
+
+                     // 能量流动是sin波，哈希按 2π 取模后存进 [0,1]
+                     float hash = data[offset + GeodesicSphere.HASH] / Mth.TWO_PI;
+                     hash -= Mth.floor(hash);
+
+                     // 渲染线条为四边形（两个三角形），线条两侧顶点的展开方向相反
+                     // 三角形 1
+                     latticeVertex(consumer, data, offset, hash, startX, startY, startZ, -sideX, -sideY, -sideZ);
+                     latticeVertex(consumer, data, offset, hash, startX, startY, startZ, sideX, sideY, sideZ);
+                     latticeVertex(consumer, data, offset, hash, endX, endY, endZ, sideX, sideY, sideZ);
+
+                     // 三角形 2
+                     latticeVertex(consumer, data, offset, hash, startX, startY, startZ, -sideX, -sideY, -sideZ);
+                     latticeVertex(consumer, data, offset, hash, endX, endY, endZ, sideX, sideY, sideZ);
+                     latticeVertex(consumer, data, offset, hash, endX, endY, endZ, -sideX, -sideY, -sideZ);
               }
        }
 
        /**
-        * 测地线球类（基于正二十面体细分）
+        * @param sideX 线条展开方向（单位向量），映射到 [0,1] 后存进顶点颜色的绿、蓝、透明通道
+        */
+       private static void latticeVertex(VertexConsumer consumer, float[] data, int offset, float hash,
+                     float x, float y, float z, float sideX, float sideY, float sideZ) {
+              consumer.addVertex(x, y, z)
+                            .setColor(hash, sideX * 0.5f + 0.5f, sideY * 0.5f + 0.5f, sideZ * 0.5f + 0.5f)
+                            .setNormal(data[offset + GeodesicSphere.MID],
+                                          data[offset + GeodesicSphere.MID + 1],
+                                          data[offset + GeodesicSphere.MID + 2]);
+       }
+
+       /**
+        * 单位半径的测地线球（基于正二十面体细分）
+        *
+        * 细分时用边的两个端点索引查找已经生成的中点，不再线性扫描所有顶点；
+        * 相邻三角形共用的边只保留一条。每条边预先算好端点、线条宽度方向、中点和能量流动的位置哈希。
         */
-       private static class GeodesicSphere {
-              List<Vec3> vertices = new ArrayList<>();
-              List<Edge> edges = new ArrayList<>();
+       static final class GeodesicSphere {
+              static final int START = 0;
+              static final int END = 3;
+              static final int PERPENDICULAR = 6;
+              static final int MID = 9;
+              static final int HASH = 12;
+              static final int STRIDE = 13;
+
+              final int edgeCount;
+
+              /**
+               * 每条边 {@link #STRIDE} 个float：起点、终点、线条宽度方向（单位向量）、弦中点、位置哈希
+               */
+              final float[] edgeData;
+
+              GeodesicSphere(int subdivisions) {
+                     List<Vector3f> points = new ArrayList<>();
 
-              GeodesicSphere(float radius, int subdivisions) {
                      // 黄金比例
                      float t = (1.0f + Mth.sqrt(5.0f)) / 2.0f;
 
                      // 初始正二十面体的12个顶点
-                     addVertex(normalize(new Vec3(-1, t, 0), radius));
-                     addVertex(normalize(new Vec3(1, t, 0), radius));
-                     addVertex(normalize(new Vec3(-1, -t, 0), radius));
-                     addVertex(normalize(new Vec3(1, -t, 0), radius));
+                     points.add(new Vector3f(-1, t, 0).normalize());
+                     points.add(new Vector3f(1, t, 0).normalize());
+                     points.add(new Vector3f(-1, -t, 0).normalize());
+                     points.add(new Vector3f(1, -t, 0).normalize());
 
-                     addVertex(normalize(new Vec3(0, -1, t), radius));
-                     addVertex(normalize(new Vec3(0, 1, t), radius));
-                     addVertex(normalize(new Vec3(0, -1, -t), radius));
-                     addVertex(normalize(new Vec3(0, 1, -t), radius));
+                     points.add(new Vector3f(0, -1, t).normalize());
+                     points.add(new Vector3f(0, 1, t).normalize());
+                     points.add(new Vector3f(0, -1, -t).normalize());
+                     points.add(new Vector3f(0, 1, -t).normalize());
 
-                     addVertex(normalize(new Vec3(t, 0, -1), radius));
-                     addVertex(normalize(new Vec3(t, 0, 1), radius));
-                     addVertex(normalize(new Vec3(-t, 0, -1), radius));
-                     addVertex(normalize(new Vec3(-t, 0, 1), radius));
+                     points.add(new Vector3f(t, 0, -1).normalize());
+                     points.add(new Vector3f(t, 0, 1).normalize());
+                     points.add(new Vector3f(-t, 0, -1).normalize());
+                     points.add(new Vector3f(-t, 0, 1).normalize());
 
                      // 20个三角形面
-                     List<Triangle> faces = new ArrayList<>();
-                     faces.add(new Triangle(0, 11, 5));
-                     faces.add(new Triangle(0, 5, 1));
-                     faces.add(new Triangle(0, 1, 7));
-                     faces.add(new Triangle(0, 7, 10));
-                     faces.add(new Triangle(0, 10, 11));
-
-                     faces.add(new Triangle(1, 5, 9));
-                     faces.add(new Triangle(5, 11, 4));
-                     faces.add(new Triangle(11, 10, 2));
-                     faces.add(new Triangle(10, 7, 6));
-                     faces.add(new Triangle(7, 1, 8));
-
-                     faces.add(new Triangle(3, 9, 4));
-                     faces.add(new Triangle(3, 4, 2));
-                     faces.add(new Triangle(3, 2, 6));
-                     faces.add(new Triangle(3, 6, 8));
-                     faces.add(new Triangle(3, 8, 9));
-
-                     faces.add(new Triangle(4, 9, 5));
-                     faces.add(new Triangle(2, 4, 11));
-                     faces.add(new Triangle(6, 2, 10));
-                     faces.add(new Triangle(8, 6, 7));
-                     faces.add(new Triangle(9, 8, 1));
-
-                     // 细分
+                     int[] faces = {
+                                   0, 11, 5, 0, 5, 1, 0, 1, 7, 0, 7, 10, 0, 10, 11,
+                                   1, 5, 9, 5, 11, 4, 11, 10, 2, 10, 7, 6, 7, 1, 8,
+                                   3, 9, 4, 3, 4, 2, 3, 2, 6, 3, 6, 8, 3, 8, 9,
+                                   4, 9, 5, 2, 4, 11, 6, 2, 10, 8, 6, 7, 9, 8, 1
+                     };
+
+                     // 细分：每个三角形分成4个，新顶点投影回单位球面
                      for (int i = 0; i < subdivisions; i++) {
-                            List<Triangle> newFaces = new ArrayList<>();
-                            for (Triangle tri : faces) {
-                                   Vec3 v1 = vertices.get(tri.v1);
-                                   Vec3 v2 = vertices.get(tri.v2);
-                                   Vec3 v3 = vertices.get(tri.v3);
-
-                                   Vec3 a = normalize(midpoint(v1, v2), radius);
-                                   Vec3 b = normalize(midpoint(v2, v3), radius);
-                                   Vec3 c = normalize(midpoint(v3, v1), radius);
-
-                                   int ia = addVertex(a);
-                                   int ib = addVertex(b);
-                                   int ic = addVertex(c);
-
-                                   newFaces.add(new Triangle(tri.v1, ia, ic));
-                                   newFaces.add(new Triangle(tri.v2, ib, ia));
-                                   newFaces.add(new Triangle(tri.v3, ic, ib));
-                                   newFaces.add(new Triangle(ia, ib, ic));
+                            Map<Long, Integer> midpoints = new HashMap<>();
+                            int[] newFaces = new int[faces.length * 4];
+                            int n = 0;
+                            for (int f = 0; f < faces.length; f += 3) {
+                                   int v1 = faces[f];
+                                   int v2 = faces[f + 1];
+                                   int v3 = faces[f + 2];
+
+                                   int a = midpoint(points, midpoints, v1, v2);
+                                   int b = midpoint(points, midpoints, v2, v3);
+                                   int c = midpoint(points, midpoints, v3, v1);
+
+                                   n = putTriangle(newFaces, n, v1, a, c);
+                                   n = putTriangle(newFaces, n, v2, b, a);
+                                   n = putTriangle(newFaces, n, v3, c, b);
+                                   n = putTriangle(newFaces, n, a, b, c);
                             }
                             faces = newFaces;
                      }
 
-                     // 生成边
-                     int edgeIndex = 0;
-                     for (Triangle tri : faces) {
-                            edges.add(new Edge(vertices.get(tri.v1), vertices.get(tri.v2), edgeIndex++));
-                            edges.add(new Edge(vertices.get(tri.v2), vertices.get(tri.v3), edgeIndex++));
-                            edges.add(new Edge(vertices.get(tri.v3), vertices.get(tri.v1), edgeIndex++));
+                     // 生成边（去重）
+                     Set<Long> seen = new HashSet<>();
+                     List<int[]> edges = new ArrayList<>();
+                     for (int f = 0; f < faces.length; f += 3) {
+                            addEdge(seen, edges, faces[f], faces[f + 1]);
+                            addEdge(seen, edges, faces[f + 1], faces[f + 2]);
+                            addEdge(seen, edges, faces[f + 2], faces[f]);
                      }
-              }
 
-              private int addVertex(Vec3 v) {
-                     for (int i = 0; i < vertices.size(); i++) {
-                            Vec3 existing = vertices.get(i);
-                            if (existing.distanceTo(v) < 0.0001) {
-                                   return i;
-                            }
+                     edgeCount = edges.size();
+                     edgeData = new float[edgeCount * STRIDE];
+                     Vector3f direction = new Vector3f();
+                     Vector3f perpendicular = new Vector3f();
+                     for (int index = 0; index < edgeCount; index++) {
+                            Vector3f start = points.get(edges.get(index)[0]);
+                            Vector3f end = points.get(edges.get(index)[1]);
+                            int o = index * STRIDE;
+
+                            edgeData[o + START] = start.x;
+                            edgeData[o + START + 1] = start.y;
+                            edgeData[o + START + 2] = start.z;
+                            edgeData[o + END] = end.x;
+                            edgeData[o + END + 1] = end.y;
+                            edgeData[o + END + 2] = end.z;
+
+                            // 线条宽度方向：垂直于边和指向球心的方向，缩放后方向不变
+                            end.sub(start, direction).normalize();
+                            direction.cross(start, perpendicular).normalize();
+                            edgeData[o + PERPENDICULAR] = perpendicular.x;
+                            edgeData[o + PERPENDICULAR + 1] = perpendicular.y;
+                            edgeData[o + PERPENDICULAR + 2] = perpendicular.z;
+
+                            edgeData[o + MID] = (start.x + end.x) * 0.5f;
+                            edgeData[o + MID + 1] = (start.y + end.y) * 0.5f;
+                            edgeData[o + MID + 2] = (start.z + end.z) * 0.5f;
+
+                            edgeData[o + HASH] = (index / 20) * 0.3f + (index % 20) * 0.2f;
                      }
-                     vertices.add(v);
-                     return vertices.size() - 1;
               }
 
-              private Vec3 normalize(Vec3 v, float radius) {
-                     double length = Math.sqrt(v.x * v.x + v.y * v.y + v.z * v.z);
-                     return new Vec3(
-                                   v.x / length * radius,
-                                   v.y / length * radius,
-                                   v.z / length * radius);
+              private static int midpoint(List<Vector3f> points, Map<Long, Integer> midpoints, int v1, int v2) {
+                     long key = edgeKey(v1, v2);
+                     Integer existing = midpoints.get(key);
+                     if (existing != null) {
+                            return existing;
+                     }
+                     Vector3f mid = new Vector3f(points.get(v1)).add(points.get(v2)).normalize();
+                     points.add(mid);
+                     int index = points.size() - 1;
+                     midpoints.put(key, index);
+                     return index;
               }
 
-              private Vec3 midpoint(Vec3 v1, Vec3 v2) {
-                     return new Vec3(
-                                   (v1.x + v2.x) * 0.5,
-                                   (v1.y + v2.y) * 0.5,
-                                   (v1.z + v2.z) * 0.5);
+              private static int putTriangle(int[] faces, int n, int v1, int v2, int v3) {
+                     faces[n] = v1;
+                     faces[n + 1] = v2;
+                     faces[n + 2] = v3;
+                     return n + 3;
               }
-       }
-
-       private static class Triangle {
-              int v1, v2, v3;
 
-              Triangle(int v1, int v2, int v3) {
-                     this.v1 = v1;
-                     this.v2 = v2;
-                     this.v3 = v3;
+              private static void addEdge(Set<Long> seen, List<int[]> edges, int v1, int v2) {
+                     if (seen.add(edgeKey(v1, v2))) {
+                            edges.add(new int[] { v1, v2 });
+                     }
               }
-       }
 
-       private static class Edge {
-              Vec3 v1, v2;
-              int index;
-
-              Edge(Vec3 v1, Vec3 v2, int index) {
-                     this.v1 = v1;
-                     this.v2 = v2;
-                     this.index = index;
+              private static long edgeKey(int v1, int v2) {
+                     return ((long) Math.min(v1, v2) << 32) | Math.max(v1, v2);
               }
        }
 
-       /**
-        * 计算能量流动效果
-        */
-       private static float calculateEnergyFlow(Vec3 pos, float time, int lat, int lon) {
-              float distanceFromTop = (float) Math.abs(pos.y);
-              float positionHash = lat * 0.3f + lon * 0.2f;
-              return (Mth.sin(time * 0.5f + distanceFromTop * 1.5f + positionHash) + 1.0f) * 0.5f;
-       }
-
-       /**
-        * 渲染线条
-        */
-       private static void renderLine(VertexConsumer consumer, Matrix4f matrix,
-                     Vec3 start, Vec3 end, float r, float g, float b, float alpha) {
-
-              Vector3f startVec = new Vector3f((float) start.x, (float) start.y, (float) start.z);
-              Vector3f endVec = new Vector3f((float) end.x, (float) end.y, (float) end.z);
-
-              // 计算线条的方向和法向量
-              Vector3f direction = new Vector3f(endVec).sub(startVec).normalize();
-              Vector3f toCenter = new Vector3f(startVec).normalize();
-              Vector3f perpendicular = new Vector3f(direction).cross(toCenter).normalize();
-
-              // 创建线条的四个顶点（形成有宽度的线条）
-              float halfWidth = LINE_WIDTH;
-              Vector3f offset = new Vector3f(perpendicular).mul(halfWidth);
-
-              Vector3f v1 = new Vector3f(startVec).sub(offset);
-              Vector3f v2 = new Vector3f(startVec).add(offset);
-              Vector3f v3 = new Vector3f(endVec).add(offset);
-              Vector3f v4 = new Vector3f(endVec).sub(offset);
-
-              // 渲染线条为四边形（两个三角形）
-              // 三角形 1
-              consumer.addVertex(matrix, v1.x, v1.y, v1.z)
-                            .setColor(r, g, b, alpha);
-              consumer.addVertex(matrix, v2.x, v2.y, v2.z)
-                            .setColor(r, g, b, alpha);
-              consumer.addVertex(matrix, v3.x, v3.y, v3.z)
-                            .setColor(r, g, b, alpha);
-
-              // 三角形 2
-              consumer.addVertex(matrix, v1.x, v1.y, v1.z)
-                            .setColor(r, g, b, alpha);
-              consumer.addVertex(matrix, v3.x, v3.y, v3.z)
-                            .setColor(r, g, b, alpha);
-              consumer.addVertex(matrix, v4.x, v4.y, v4.z)
-                            .setColor(r, g, b, alpha);
-       }
-
 }
@@ -59,17 +59,13 @@ public class ShieldImpactEffect {
     /**
      * 注册一个新的击中效果
      * 
-     * @param entityId     实体ID（用于区分不同实体的护盾）
-     * @param hitPosition  击中位置（世界坐标）
-     * @param shieldCenter 护盾中心（世界坐标）
+     * @param entityId  实体ID（用于区分不同实体的护盾）
+     * @param direction 从护盾中心指向击中点的方向向量
      */
-    public static void registerImpact(int entityId, Vec3 hitPosition, Vec3 shieldCenter) {
+    public static void registerImpact(int entityId, Vec3 direction) {
         long currentTime = System.currentTimeMillis() / 50; // 转换为游戏刻
 
-        // 计算相对方向向量（从护盾中心指向击中点）
-        Vec3 direction = hitPosition.subtract(shieldCenter).normalize();
         activeImpacts.add(new ImpactPoint(entityId, direction, currentTime));
-
     }
 
     /**
@@ -116,6 +112,57 @@ public class ShieldImpactEffect {
                 .toList();
     }
 
+    /**
+     * 指定实体是否有活跃的击中效果（不分配对象）
+     */
+    public static boolean hasActiveImpacts(int entityId) {
+        for (int i = 0, n = activeImpacts.size(); i < n; i++) {
+            if (activeImpacts.get(i).entityId == entityId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 收集指定实体还在闪光的击中点，供着色器逐片段计算闪光
+     * 最新的击中优先，最多 {@code out.length / 4} 个
+     *
+     * @param shieldRadius 护盾半径
+     * @param out          每个击中点4个float：击中点相对护盾中心的位置xyz、闪光强度
+     * @return 写入的击中点数量
+     */
+    public static int getFlashPoints(int entityId, double shieldRadius, float[] out) {
+        if (activeImpacts.isEmpty()) {
+            return 0;
+        }
+
+        long currentTime = System.currentTimeMillis() / 50;
+        int count = 0;
+        int capacity = out.length / 4;
+        for (int i = activeImpacts.size() - 1; i >= 0 && count < capacity; i--) {
+            ImpactPoint impact = activeImpacts.get(i);
+            if (impact.entityId != entityId) {
+                continue;
+            }
+
+            // 击中后快速衰减，持续时间的三分之一内消失
+            float flashIntensity = 1.0f - impact.getProgress(currentTime) * 3.0f;
+            if (flashIntensity <= 0) {
+                continue;
+            }
+
+            Vec3 direction = impact.directionFromCenter;
+            int offset = count * 4;
+            out[offset] = (float) (direction.x * shieldRadius);
+            out[offset + 1] = (float) (direction.y * shieldRadius);
+            out[offset + 2] = (float) (direction.z * shieldRadius);
+            out[offset + 3] = flashIntensity;
+            count++;
+        }
+        return count;
+    }
+
     /**
      * 清空所有击中效果
      */
@@ -135,41 +182,4 @@ public class ShieldImpactEffect {
         // 冲击波效果已禁用，只保留闪光特效
         return 0.0f;
     }
-
-    /**
-     * 获取击中点闪光效果强度
-     * 
-     * @param entityId     实体ID（用于过滤只属于该实体的击中效果）
-     * @param position     要检查的位置
-     * @param shieldCenter 护盾中心
-     * @param shieldRadius 护盾半径
-     * @return 闪光强度（0.0-1.0）
-     */
-    public static float getFlashIntensity(int entityId, Vec3 position, Vec3 shieldCenter, double shieldRadius) {
-        long currentTime = System.currentTimeMillis() / 50;
-        float maxFlash = 0.0f;
-
-        // 只遍历属于该实体的击中效果，避免闪光效果在所有护盾上同步显示
-        for (ImpactPoint impact : activeImpacts) {
-            // 过滤：只处理属于当前实体的击中点
-            if (impact.entityId != entityId) {
-                continue;
-            }
-            
-            // 使用相对方向向量计算击中点在护盾表面的实际位置
-            Vec3 impactPositionOnShield = shieldCenter.add(impact.directionFromCenter.scale(shieldRadius));
-            double distance = position.distanceTo(impactPositionOnShield);
-            float progress = impact.getProgress(currentTime);
-
-            // 击中点附近的强烈闪光（快速衰减）
-            if (distance < 0.5) {
-                float flashIntensity = (1.0f - progress * 3.0f); // 快速衰减
-                if (flashIntensity > 0) {
-                    maxFlash = Math.max(maxFlash, flashIntensity * (1.0f - (float) distance / 0.5f));
-                }
-            }
-        }
-
-        return Math.min(1.0f, maxFlash);
-    }
 }
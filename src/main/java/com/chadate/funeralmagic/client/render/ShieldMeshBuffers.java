@@ -0,0 +1,289 @@
+package com.chadate.funeralmagic.client.render;
+
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.systems.RenderSystem;
+import com.mojang.blaze3d.vertex.BufferBuilder;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import com.mojang.blaze3d.vertex.MeshData;
+import com.mojang.blaze3d.vertex.PoseStack;
+import com.mojang.blaze3d.vertex.Tesselator;
+import com.mojang.blaze3d.vertex.VertexBuffer;
+import com.mojang.blaze3d.vertex.VertexFormat;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import net.minecraft.client.Minecraft;
+import net.minecraft.client.renderer.ShaderInstance;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 护盾静态网格的GPU顶点缓冲
+ *
+ * 内层能量场、外层光晕的经纬球、六边形网格和粒子种子都按单位半径只生成一次，上传到常驻的 {@link VertexBuffer}。
+ * 动画由 {@link ShieldShaders} 的着色器计算，每个护盾每帧的CPU开销与网格精度无关。
+ * 同一层的所有护盾用一次实例化绘制：护盾中心、半径、颜色、时间和受击闪光写进实例缓冲，作为每实例的顶点属性传给着色器。
+ *
+ * 缓冲在游戏运行期间常驻，与原版天空盒的顶点缓冲一样不随资源重载重建。只能在渲染线程上调用。
+ */
+public final class ShieldMeshBuffers {
+
+    /** 内层能量场的经纬分段数 */
+    private static final int INNER_BANDS = 24;
+
+    /** 外层光晕的经纬分段数 */
+    private static final int GLOW_BANDS = 12;
+
+    private static VertexBuffer innerSphere;
+    private static VertexBuffer glowSphere;
+    private static VertexBuffer particles;
+    private static final VertexBuffer[] HEX_LATTICES = new VertexBuffer[HexagonalShieldMesh.MAX_SUBDIVISION_LEVEL + 1];
+
+    /** 每个静态网格的索引数量（都使用原版的顺序索引缓冲） */
+    private static final Reference2IntOpenHashMap<VertexBuffer> INDEX_COUNTS = new Reference2IntOpenHashMap<>();
+
+    /** 每个实例的float数量和字节数 */
+    private static final int INSTANCE_FLOATS = 9 + ShieldShaders.MAX_IMPACTS * 4;
+    private static final int INSTANCE_STRIDE = INSTANCE_FLOATS * Float.BYTES;
+
+    /** 绘制时复用的模型视图矩阵 */
+    private static final Matrix4f MODEL_VIEW = new Matrix4f();
+
+    /** 受击闪光的临时数组 */
+    private static final float[] IMPACTS = new float[ShieldShaders.MAX_IMPACTS * 4];
+
+    /** 实例缓冲的GL对象和CPU端数据，容量不够时翻倍 */
+    private static int instanceBuffer;
+    private static ByteBuffer instanceData;
+
+    /** 当前批次的顶点缓冲和着色器 */
+    private static VertexBuffer batchBuffer;
+    private static ShaderInstance batchShader;
+    private static boolean batchFlow;
+    private static int batchCount;
+
+    private ShieldMeshBuffers() {
+    }
+
+    /**
+     * 内层能量场的单位球
+     */
+    public static VertexBuffer innerSphere() {
+        if (innerSphere == null) {
+            innerSphere = buildSphere(INNER_BANDS);
+        }
+        return innerSphere;
+    }
+
+    /**
+     * 外层光晕的单位球
+     */
+    public static VertexBuffer glowSphere() {
+        if (glowSphere == null) {
+            glowSphere = buildSphere(GLOW_BANDS);
+        }
+        return glowSphere;
+    }
+
+    /**
+     * 当前细分级别的单位半径六边形网格
+     */
+    public static VertexBuffer hexLattice() {
+        int level = HexagonalShieldMesh.getSubdivisionLevel();
+        VertexBuffer lattice = HEX_LATTICES[level];
+        if (lattice == null) {
+            BufferBuilder builder = Tesselator.getInstance().begin(VertexFormat.Mode.TRIANGLES, DefaultVertexFormat.POSITION_COLOR_NORMAL);
+            HexagonalShieldMesh.bakeUnitLattice(builder, level);
+            lattice = upload(builder);
+            HEX_LATTICES[level] = lattice;
+        }
+        return lattice;
+    }
+
+    /**
+     * 所有护盾共用的粒子种子
+     */
+    public static VertexBuffer particles() {
+        if (particles == null) {
+            BufferBuilder builder = Tesselator.getInstance().begin(VertexFormat.Mode.TRIANGLES, DefaultVertexFormat.POSITION_TEX_COLOR);
+            ShieldParticleSystem.bakeSeeds(builder);
+            particles = upload(builder);
+        }
+        return particles;
+    }
+
+    /**
+     * 开始一批护盾网格的绘制：之后用 {@link #drawInstance} 加入每个护盾，{@link #end} 时一次绘制
+     * 调用前需要设置好混合和深度状态
+     *
+     * @param fresnel 菲涅尔边缘光强度，0表示关闭
+     * @param flow    是否计算能量流动和受击闪光（只用于六边形网格）
+     * @return 着色器还没加载时返回false，这时不能调用 {@link #drawInstance} 和 {@link #end}
+     */
+    public static boolean begin(PoseStack poseStack, VertexBuffer buffer, float fresnel, boolean flow) {
+        if (!begin(poseStack, buffer, ShieldShaders.energyShield())) {
+            return false;
+        }
+        // 六边形网格的线条在顶点着色器里按固定宽度展开
+        boolean lattice = buffer == HEX_LATTICES[HexagonalShieldMesh.getSubdivisionLevel()];
+        ShieldShaders.setLayer(fresnel, flow, lattice ? HexagonalShieldMesh.LINE_WIDTH : 0.0f);
+        batchFlow = flow;
+        return true;
+    }
+
+    /**
+     * 开始一批粒子的绘制
+     *
+     * @return 着色器还没加载时返回false
+     */
+    public static boolean beginParticles(PoseStack poseStack) {
+        if (!begin(poseStack, particles(), ShieldShaders.shieldParticle())) {
+            return false;
+        }
+        batchFlow = false;
+        return true;
+    }
+
+    private static boolean begin(PoseStack poseStack, VertexBuffer buffer, ShaderInstance shader) {
+        if (shader == null) {
+            return false;
+        }
+
+        // 模型视图矩阵整批共用，每个护盾的平移和缩放在顶点着色器里按实例数据计算
+        MODEL_VIEW.set(RenderSystem.getModelViewMatrix()).mul(poseStack.last().pose());
+        shader.setDefaultUniforms(VertexFormat.Mode.TRIANGLES, MODEL_VIEW,
+                RenderSystem.getProjectionMatrix(), Minecraft.getInstance().getWindow());
+        shader.apply();
+        batchBuffer = buffer;
+        batchShader = shader;
+        batchCount = 0;
+        return true;
+    }
+
+    /**
+     * 把一个护盾加入当前批次：在相对相机的位置绘制一个按半径缩放的单位网格
+     *
+     * @param time 护盾的动画时间
+     */
+    public static void drawInstance(int entityId, float x, float y, float z, double radius,
+            float time, float r, float g, float b, float alpha) {
+        ByteBuffer data = reserveInstance();
+        data.putFloat(x).putFloat(y).putFloat(z).putFloat((float) radius);
+        data.putFloat(r).putFloat(g).putFloat(b).putFloat(alpha);
+        data.putFloat(time);
+
+        int impacts = batchFlow ? ShieldImpactEffect.getFlashPoints(entityId, radius, IMPACTS) : 0;
+        for (int i = 0; i < ShieldShaders.MAX_IMPACTS * 4; i++) {
+            data.putFloat(i < impacts * 4 ? IMPACTS[i] : 0.0f);
+        }
+        batchCount++;
+    }
+
+    /**
+     * 结束一批绘制：上传实例数据，整层只发出一次实例化绘制调用
+     */
+    public static void end() {
+        if (batchCount > 0) {
+            if (instanceBuffer == 0) {
+                instanceBuffer = GlStateManager._glGenBuffers();
+            }
+            instanceData.flip();
+
+            batchBuffer.bind();
+            GlStateManager._glBindBuffer(GL15.GL_ARRAY_BUFFER, instanceBuffer);
+            GlStateManager._glBufferData(GL15.GL_ARRAY_BUFFER, instanceData, GL15.GL_STREAM_DRAW);
+            bindInstanceAttributes(ShieldShaders.instanceAttributes(batchShader));
+            GlStateManager._glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
+
+            // 静态网格使用原版的顺序索引缓冲，索引类型随缓冲容量变化，绘制时再读取
+            VertexFormat.IndexType indexType = RenderSystem.getSequentialBuffer(VertexFormat.Mode.TRIANGLES).type();
+            GL31.glDrawElementsInstanced(GL11.GL_TRIANGLES, INDEX_COUNTS.getInt(batchBuffer), indexType.asGLType, 0L, batchCount);
+            VertexBuffer.unbind();
+            instanceData.clear();
+        }
+
+        batchShader.clear();
+        batchBuffer = null;
+        batchShader = null;
+        batchCount = 0;
+    }
+
+    /**
+     * 实例属性记录在网格的顶点数组对象里，每批重新指向实例缓冲（着色器重载后属性位置可能变化）
+     */
+    private static void bindInstanceAttributes(int[] locations) {
+        long offset = 0;
+        for (int i = 0; i < locations.length; i++) {
+            int size = ShieldShaders.INSTANCE_ATTRIBUTE_SIZES[i];
+            int location = locations[i];
+            if (location >= 0) {
+                GlStateManager._enableVertexAttribArray(location);
+                GlStateManager._vertexAttribPointer(location, size, GL11.GL_FLOAT, false, INSTANCE_STRIDE, offset);
+                GL33.glVertexAttribDivisor(location, 1);
+            }
+            offset += (long) size * Float.BYTES;
+        }
+    }
+
+    private static ByteBuffer reserveInstance() {
+        if (instanceData == null) {
+            instanceData = MemoryUtil.memAlloc(INSTANCE_STRIDE * 64);
+        } else if (instanceData.remaining() < INSTANCE_STRIDE) {
+            instanceData = MemoryUtil.memRealloc(instanceData, instanceData.capacity() * 2);
+        }
+        return instanceData;
+    }
+
+    /**
+     * 生成单位半径的经纬球（三角形顶点顺序与原来逐帧生成的球体相同）
+     */
+    private static VertexBuffer buildSphere(int bands) {
+        BufferBuilder builder = Tesselator.getInstance().begin(VertexFormat.Mode.TRIANGLES, DefaultVertexFormat.POSITION_COLOR_NORMAL);
+
+        for (int lat = 0; lat < bands; lat++) {
+            double theta1 = lat * Math.PI / bands;
+            double theta2 = (lat + 1) * Math.PI / bands;
+
+            for (int lon = 0; lon < bands; lon++) {
+                double phi1 = lon * 2 * Math.PI / bands;
+                double phi2 = (lon + 1) * 2 * Math.PI / bands;
+
+                // 三角形1：v1 -> v3 -> v2
+                sphereVertex(builder, theta1, phi1);
+                sphereVertex(builder, theta2, phi2);
+                sphereVertex(builder, theta1, phi2);
+
+                // 三角形2：v1 -> v4 -> v3
+                sphereVertex(builder, theta1, phi1);
+                sphereVertex(builder, theta2, phi1);
+                sphereVertex(builder, theta2, phi2);
+            }
+        }
+
+        return upload(builder);
+    }
+
+    private static void sphereVertex(BufferBuilder builder, double theta, double phi) {
+        float x = (float) (Math.sin(theta) * Math.cos(phi));
+        float y = (float) Math.cos(theta);
+        float z = (float) (Math.sin(theta) * Math.sin(phi));
+        // 单位球的法线就是顶点位置
+        builder.addVertex(x, y, z)
+                .setColor(1.0f, 1.0f, 1.0f, 1.0f)
+                .setNormal(x, y, z);
+    }
+
+    private static VertexBuffer upload(BufferBuilder builder) {
+        MeshData mesh = builder.buildOrThrow();
+        VertexBuffer buffer = new VertexBuffer(VertexBuffer.Usage.STATIC);
+        INDEX_COUNTS.put(buffer, mesh.drawState().indexCount());
+        buffer.bind();
+        buffer.upload(mesh);
+        VertexBuffer.unbind();
+        return buffer;
+    }
+}
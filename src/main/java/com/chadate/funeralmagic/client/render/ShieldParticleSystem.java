@@ -2,14 +2,15 @@ package com.chadate.funeralmagic.client.render;
 
 import com.mojang.blaze3d.vertex.VertexConsumer;
 import net.minecraft.util.Mth;
-import org.joml.Matrix4f;
-import org.joml.Vector3f;
 
 import java.util.Random;
 
 /**
  * GPU加速的护盾粒子系统
  * 渲染数千个能量粒子环绕护盾
+ *
+ * 粒子种子只生成一次并上传到静态顶点缓冲（见 {@link ShieldMeshBuffers#particles()}），
+ * 每个护盾每帧只需要提供半径、时间和颜色这几个实例数据。
  */
 public class ShieldParticleSystem {
 
@@ -48,105 +49,32 @@ public class ShieldParticleSystem {
     }
 
     /**
-     * 渲染粒子系统
-     * 
-     * @param consumer 顶点消费者
-     * @param matrix   变换矩阵
-     * @param radius   护盾半径
-     * @param r        红色分量
-     * @param g        绿色分量
-     * @param b        蓝色分量
-     * @param alpha    透明度
-     * @param time     动画时间
+     * 把所有粒子的种子写入静态顶点缓冲
+     * 每个粒子6个顶点（两个三角形），都带着相同的种子和各自的四边形角，
+     * 轨迹、公告板展开和闪烁由 shield_particle 顶点着色器计算
+     *
+     * @param consumer POSITION_TEX_COLOR 格式的顶点消费者
      */
-    public static void renderParticles(VertexConsumer consumer, Matrix4f matrix,
-            double radius, float r, float g, float b,
-            float alpha, float time) {
+    static void bakeSeeds(VertexConsumer consumer) {
         initialize();
 
         for (int i = 0; i < PARTICLE_COUNT; i++) {
             Particle p = particles[i];
 
-            // 计算粒子当前位置（螺旋轨迹）
-            float theta = p.baseTheta + time * p.speed;
-            float phi = p.basePhi + Mth.sin(time * p.speed * 0.5f) * 0.3f;
+            // 四边形：v1(-,-) v2(+,-) v3(+,+) v4(-,+)，顶点顺序与原来CPU生成时相同
+            seedVertex(consumer, p, 0, 0);
+            seedVertex(consumer, p, 1, 1);
+            seedVertex(consumer, p, 1, 0);
 
-            // 球面坐标转换
-            float x = (float) (radius * Math.sin(phi) * Math.cos(theta));
-            float y = (float) (radius * Math.cos(phi));
-            float z = (float) (radius * Math.sin(phi) * Math.sin(theta));
-
-            // 粒子闪烁效果
-            float brightness = (Mth.sin(time * 2.0f + p.phaseOffset) + 1.0f) * 0.5f;
-            brightness = 0.3f + brightness * 0.7f;
-
-            // 粒子透明度（远离相机的粒子更透明）
-            float particleAlpha = alpha * brightness;
-
-            // 渲染粒子
-            renderBillboardParticle(consumer, matrix, x, y, z, p.size,
-                    r * 2.0f, g * 2.0f, b * 2.0f, particleAlpha);
+            seedVertex(consumer, p, 0, 0);
+            seedVertex(consumer, p, 0, 1);
+            seedVertex(consumer, p, 1, 1);
         }
     }
 
-    /**
-     * 渲染单个公告板粒子
-     */
-    private static void renderBillboardParticle(VertexConsumer consumer, Matrix4f matrix,
-            float x, float y, float z, float size,
-            float r, float g, float b, float alpha) {
-
-        Vector3f center = new Vector3f(x, y, z);
-        Vector3f normal = new Vector3f(center).normalize();
-
-        // 四个顶点（形成一个面向外的正方形）
-        float halfSize = size / 2.0f;
-
-        // 构建局部坐标系
-        Vector3f tangent = getTangent(normal);
-        Vector3f bitangent = new Vector3f(normal).cross(tangent).normalize();
-
-        Vector3f v1 = new Vector3f(center).add(
-                tangent.x * -halfSize + bitangent.x * -halfSize,
-                tangent.y * -halfSize + bitangent.y * -halfSize,
-                tangent.z * -halfSize + bitangent.z * -halfSize);
-
-        Vector3f v2 = new Vector3f(center).add(
-                tangent.x * halfSize + bitangent.x * -halfSize,
-                tangent.y * halfSize + bitangent.y * -halfSize,
-                tangent.z * halfSize + bitangent.z * -halfSize);
-
-        Vector3f v3 = new Vector3f(center).add(
-                tangent.x * halfSize + bitangent.x * halfSize,
-                tangent.y * halfSize + bitangent.y * halfSize,
-                tangent.z * halfSize + bitangent.z * halfSize);
-
-        Vector3f v4 = new Vector3f(center).add(
-                tangent.x * -halfSize + bitangent.x * halfSize,
-                tangent.y * -halfSize + bitangent.y * halfSize,
-                tangent.z * -halfSize + bitangent.z * halfSize);
-
-        // 渲染四边形
-        consumer.addVertex(matrix, v1.x, v1.y, v1.z)
-                .setColor(r, g, b, alpha);
-        consumer.addVertex(matrix, v3.x, v3.y, v3.z)
-                .setColor(r, g, b, alpha);
-        consumer.addVertex(matrix, v2.x, v2.y, v2.z)
-                .setColor(r, g, b, alpha);
-
-        consumer.addVertex(matrix, v1.x, v1.y, v1.z)
-                .setColor(r, g, b, alpha);
-        consumer.addVertex(matrix, v4.x, v4.y, v4.z)
-                .setColor(r, g, b, alpha);
-        consumer.addVertex(matrix, v3.x, v3.y, v3.z)
-                .setColor(r, g, b, alpha);
-    }
-
-    /**
-     * 计算法向量的切线
-     */
-    private static Vector3f getTangent(Vector3f normal) {
-        Vector3f up = Math.abs(normal.y) < 0.9f ? new Vector3f(0, 1, 0) : new Vector3f(1, 0, 0);
-        return new Vector3f(normal).cross(up).normalize();
+    private static void seedVertex(VertexConsumer consumer, Particle p, int cornerX, int cornerY) {
+        consumer.addVertex(p.baseTheta, p.basePhi, p.speed)
+                .setUv(p.size, p.phaseOffset)
+                .setColor(cornerX * 255, cornerY * 255, 0, 255);
     }
 }
@@ -0,0 +1,119 @@
+package com.chadate.funeralmagic.client.render;
+
+import com.chadate.funeralmagic.SomeFunStuff;
+import com.mojang.blaze3d.platform.GlStateManager;
+import com.mojang.blaze3d.shaders.Uniform;
+import com.mojang.blaze3d.vertex.DefaultVertexFormat;
+import net.minecraft.client.renderer.ShaderInstance;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.client.event.RegisterShadersEvent;
+
+import java.io.IOException;
+
+/**
+ * 护盾着色器
+ *
+ * energy_shield 是护盾静态网格的主程序：菲涅尔边缘光、六边形网格的能量流动和受击闪光
+ * 都在片段着色器里根据护盾的动画时间计算，CPU不再逐帧改写顶点颜色。
+ * shield_particle 在顶点着色器里根据粒子种子计算轨迹、公告板和闪烁。
+ *
+ * 两个程序都用实例化绘制：护盾中心、半径、颜色、时间和受击闪光是每个实例一份的顶点属性（见 {@link #INSTANCE_ATTRIBUTES}），
+ * 一层的所有护盾只需要一次绘制调用。
+ */
+public final class ShieldShaders {
+
+    /** 着色器里受击闪光属性的数量（InstanceImpact0 ~ InstanceImpact3） */
+    public static final int MAX_IMPACTS = 4;
+
+    /** 每个实例的顶点属性，按这个顺序紧密排列在实例缓冲里 */
+    static final String[] INSTANCE_ATTRIBUTES = {
+            "InstanceCenter", "InstanceColor", "InstanceTime",
+            "InstanceImpact0", "InstanceImpact1", "InstanceImpact2", "InstanceImpact3"
+    };
+
+    /** 每个实例属性的float数量 */
+    static final int[] INSTANCE_ATTRIBUTE_SIZES = {4, 4, 1, 4, 4, 4, 4};
+
+    private static ShaderInstance energyShield;
+    private static Uniform fresnelStrength;
+    private static Uniform energyFlow;
+    private static Uniform lineWidth;
+    private static int[] energyShieldAttributes;
+
+    private static ShaderInstance shieldParticle;
+    private static int[] particleAttributes;
+
+    private ShieldShaders() {
+    }
+
+    /**
+     * 注册护盾着色器（资源重载时重新创建）
+     */
+    public static void register(RegisterShadersEvent event) throws IOException {
+        event.registerShader(new ShaderInstance(event.getResourceProvider(),
+                ResourceLocation.fromNamespaceAndPath(SomeFunStuff.MODID, "energy_shield"),
+                DefaultVertexFormat.POSITION_COLOR_NORMAL), shader -> {
+            energyShield = shader;
+            fresnelStrength = shader.getUniform("FresnelStrength");
+            energyFlow = shader.getUniform("EnergyFlow");
+            lineWidth = shader.getUniform("LineWidth");
+            energyShieldAttributes = attributeLocations(shader);
+        });
+        event.registerShader(new ShaderInstance(event.getResourceProvider(),
+                ResourceLocation.fromNamespaceAndPath(SomeFunStuff.MODID, "shield_particle"),
+                DefaultVertexFormat.POSITION_TEX_COLOR), shader -> {
+            shieldParticle = shader;
+            particleAttributes = attributeLocations(shader);
+        });
+    }
+
+    /**
+     * 护盾主着色器，资源加载完成前为null
+     */
+    public static ShaderInstance energyShield() {
+        return energyShield;
+    }
+
+    /**
+     * 护盾粒子着色器，资源加载完成前为null
+     */
+    public static ShaderInstance shieldParticle() {
+        return shieldParticle;
+    }
+
+    /**
+     * 着色器中每个实例属性的位置，与 {@link #INSTANCE_ATTRIBUTES} 一一对应；程序里没有用到的属性为-1
+     */
+    static int[] instanceAttributes(ShaderInstance shader) {
+        return shader == energyShield ? energyShieldAttributes : particleAttributes;
+    }
+
+    /**
+     * 设置一层共用的参数
+     * 必须在着色器 apply 之后调用
+     *
+     * @param fresnel 菲涅尔边缘光强度，0表示关闭
+     * @param flow    是否计算能量流动和受击闪光（只用于六边形网格）
+     * @param width   六边形网格线条的半宽（格），球面网格为0
+     */
+    static void setLayer(float fresnel, boolean flow, float width) {
+        upload(fresnelStrength, fresnel);
+        upload(energyFlow, flow ? 1.0f : 0.0f);
+        upload(lineWidth, width);
+    }
+
+    private static int[] attributeLocations(ShaderInstance shader) {
+        int[] locations = new int[INSTANCE_ATTRIBUTES.length];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = GlStateManager._glGetAttribLocation(shader.getId(), INSTANCE_ATTRIBUTES[i]);
+        }
+        return locations;
+    }
+
+    private static void upload(Uniform uniform, float value) {
+        if (uniform != null) {
+            uniform.set(value);
+            uniform.upload();
+        }
+    }
+}
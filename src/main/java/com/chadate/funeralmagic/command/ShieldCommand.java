@@ -2,7 +2,10 @@ package com.chadate.funeralmagic.command;
 
 import com.chadate.funeralmagic.capability.ShieldCapabilities;
 import com.chadate.funeralmagic.capability.ShieldCapability;
-import com.chadate.funeralmagic.network.ShieldDataSyncPacket;
+import com.chadate.funeralmagic.network.PayloadMetrics;
+import com.chadate.funeralmagic.server.InterceptionStats;
+import com.chadate.funeralmagic.server.ShieldInterceptor;
+import com.chadate.funeralmagic.server.ShieldRegistry;
 import com.chadate.funeralmagic.util.ShieldManager;
 import com.mojang.brigadier.CommandDispatcher;
 import com.mojang.brigadier.arguments.DoubleArgumentType;
@@ -12,9 +15,9 @@ import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.commands.arguments.EntityArgument;
 import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.Entity;
-import net.neoforged.neoforge.network.PacketDistributor;
 
 import java.util.Collection;
 
@@ -35,6 +38,16 @@ public class ShieldCommand {
                     .executes(ShieldCommand::removeShield)))
             .then(Commands.literal("toggle")
                 .executes(ShieldCommand::toggleShield))
+            .then(Commands.literal("stats")
+                .executes(ShieldCommand::showStats)
+                .then(Commands.literal("reset")
+                    .executes(ShieldCommand::resetStats)))
+            .then(Commands.literal("verify")
+                .executes(ShieldCommand::verifyRegistry))
+            .then(Commands.literal("network")
+                .executes(ShieldCommand::showNetworkStats)
+                .then(Commands.literal("reset")
+                    .executes(ShieldCommand::resetNetworkStats)))
         );
     }
     
@@ -53,6 +66,120 @@ public class ShieldCommand {
         return 1;
     }
     
+    /**
+     * 显示每个维度的弹射物拦截统计
+     */
+    private static int showStats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        if (!InterceptionStats.isAllocationSupported()) {
+            source.sendSuccess(() -> Component.literal("当前JVM不支持线程内存分配统计，只显示耗时"), false);
+        }
+
+        int count = 0;
+        for (ServerLevel level : source.getServer().getAllLevels()) {
+            ShieldInterceptor interceptor = ShieldInterceptor.getIfPresent(level);
+            if (interceptor == null) {
+                continue;
+            }
+            InterceptionStats stats = interceptor.stats();
+            String text = String.format(
+                "%s: 护盾 %d, 弹射物 %d (休眠 %d), 检测 %d 次/%d tick, 命中 %d, 分配 %.1f 字节/弹射物tick, 耗时 %.1f 微秒/tick",
+                level.dimension().location(),
+                ShieldRegistry.count(level),
+                interceptor.trackedCount(),
+                interceptor.sleepingCount(),
+                stats.projectileTicks(),
+                stats.ticks(),
+                stats.hits(),
+                stats.bytesPerProjectileTick(),
+                stats.microsPerTick());
+            source.sendSuccess(() -> Component.literal(text), false);
+            count++;
+        }
+
+        if (count == 0) {
+            source.sendSuccess(() -> Component.literal("还没有任何维度的拦截统计"), false);
+        }
+        return count;
+    }
+
+    /**
+     * 清空所有维度的弹射物拦截统计
+     */
+    private static int resetStats(CommandContext<CommandSourceStack> context) {
+        for (ServerLevel level : context.getSource().getServer().getAllLevels()) {
+            ShieldInterceptor interceptor = ShieldInterceptor.getIfPresent(level);
+            if (interceptor != null) {
+                interceptor.stats().reset();
+            }
+        }
+        context.getSource().sendSuccess(() -> Component.literal("已清空拦截统计"), true);
+        return 1;
+    }
+
+    /**
+     * 检查每个维度中拥有激活护盾的实体是否都已经登记到护盾注册表
+     * 没有登记的实体不会拦截弹射物，也不会出现在登录快照中
+     */
+    private static int verifyRegistry(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        int missing = 0;
+        for (ServerLevel level : source.getServer().getAllLevels()) {
+            ShieldRegistry registry = ShieldRegistry.get(level);
+            int active = 0;
+            int levelMissing = 0;
+            for (Entity entity : level.getAllEntities()) {
+                if (!ShieldCapabilities.hasActiveShield(entity)) {
+                    continue;
+                }
+                active++;
+                if (!registry.contains(entity)) {
+                    levelMissing++;
+                }
+            }
+            if (active == 0) {
+                continue;
+            }
+
+            String text = String.format("%s: 激活的护盾 %d, 已登记 %d, 未登记 %d",
+                level.dimension().location(), active, active - levelMissing, levelMissing);
+            if (levelMissing > 0) {
+                source.sendFailure(Component.literal(text));
+            } else {
+                source.sendSuccess(() -> Component.literal(text), false);
+            }
+            missing += levelMissing;
+        }
+        return missing == 0 ? 1 : 0;
+    }
+
+    /**
+     * 显示每种网络包的发送统计
+     */
+    private static int showNetworkStats(CommandContext<CommandSourceStack> context) {
+        CommandSourceStack source = context.getSource();
+        var counters = PayloadMetrics.counters();
+        if (counters.isEmpty()) {
+            source.sendSuccess(() -> Component.literal("还没有发送过护盾网络包"), false);
+            return 0;
+        }
+
+        for (PayloadMetrics.Counter counter : counters) {
+            String text = PayloadMetrics.describe(counter);
+            source.sendSuccess(() -> Component.literal(text), false);
+        }
+        return counters.size();
+    }
+
+    /**
+     * 清空网络包统计
+     */
+    private static int resetNetworkStats(CommandContext<CommandSourceStack> context) {
+        PayloadMetrics.reset();
+        context.getSource().sendSuccess(() -> Component.literal("已清空网络包统计"), true);
+        return 1;
+    }
+
     /**
      * 给指定实体添加护盾（使用默认值）
      * 默认半径：3.0，默认强度：100
@@ -90,11 +217,8 @@ public class ShieldCommand {
             for (Entity entity : targets) {
                 // 创建新的护盾数据
                 ShieldCapability newShield = new ShieldCapability(true, radius, strength);
-                entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-                
-                // 同步到所有客户端（让所有玩家都能看到这个实体的护盾）
-                ShieldDataSyncPacket packet = new ShieldDataSyncPacket(entity.getId(), true, radius, strength);
-                PacketDistributor.sendToAllPlayers(packet);
+                // 在本tick结束时同步到追踪该实体的客户端
+                ShieldCapabilities.setShield(entity, newShield);
                 
                 successCount++;
             }
@@ -122,7 +246,7 @@ public class ShieldCommand {
             
             int successCount = 0;
             for (Entity entity : targets) {
-                ShieldCapability currentShield = entity.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+                ShieldCapability currentShield = ShieldCapabilities.getShield(entity);
                 
                 if (currentShield != null && currentShield.isShieldActive()) {
                     // 关闭护盾
@@ -131,16 +255,8 @@ public class ShieldCommand {
                         currentShield.radius(), 
                         currentShield.strength()
                     );
-                    entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-                    
-                    // 同步到所有客户端（让所有玩家都能看到护盾被移除）
-                    ShieldDataSyncPacket packet = new ShieldDataSyncPacket(
-                        entity.getId(),
-                        false, 
-                        currentShield.radius(), 
-                        currentShield.strength()
-                    );
-                    PacketDistributor.sendToAllPlayers(packet);
+                    // 在本tick结束时同步到追踪该实体的客户端
+                    ShieldCapabilities.setShield(entity, newShield);
                     
                     successCount++;
                 }
@@ -0,0 +1,91 @@
+package com.chadate.funeralmagic.network;
+
+import net.minecraft.world.phys.Vec3;
+
+/**
+ * v2 协议使用的紧凑编码
+ *
+ * 半径量化到 1/64 格，用varint写出；单位方向用八面体映射压缩成两个字节；
+ * 相对实体的偏移量化到 1/256 格，每个分量一个short（范围 ±128 格）。
+ */
+final class CompactEncoding {
+
+    private static final double RADIUS_SCALE = 64.0;
+    private static final double OFFSET_SCALE = 256.0;
+    private static final double DIRECTION_SCALE = 255.0;
+
+    private CompactEncoding() {
+    }
+
+    /**
+     * 量化护盾半径
+     */
+    static int quantizeRadius(double radius) {
+        return (int) Math.round(Math.max(0.0, Math.min(radius, 1 << 20)) * RADIUS_SCALE);
+    }
+
+    static double dequantizeRadius(int quantized) {
+        return quantized / RADIUS_SCALE;
+    }
+
+    /**
+     * 量化相对实体的偏移分量
+     */
+    static short quantizeOffset(double offset) {
+        long value = Math.round(offset * OFFSET_SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value));
+    }
+
+    static double dequantizeOffset(short quantized) {
+        return quantized / OFFSET_SCALE;
+    }
+
+    /**
+     * 用八面体映射把单位方向编码成16位：高8位是u，低8位是v
+     * 先投影到 |x|+|y|+|z|=1 的八面体上，下半球沿对角线折叠到上半球之外，
+     * 这样整个球面正好铺满 [-1,1]² 的正方形
+     */
+    static short encodeDirection(double x, double y, double z) {
+        double l1 = Math.abs(x) + Math.abs(y) + Math.abs(z);
+        if (l1 < 1.0E-9) {
+            // 退化方向，按 +z 处理
+            return encodeUV(0.0, 0.0);
+        }
+
+        double u = x / l1;
+        double v = y / l1;
+        if (z < 0) {
+            double foldedU = (1.0 - Math.abs(v)) * signNotZero(u);
+            double foldedV = (1.0 - Math.abs(u)) * signNotZero(v);
+            u = foldedU;
+            v = foldedV;
+        }
+        return encodeUV(u, v);
+    }
+
+    /**
+     * 还原八面体编码的单位方向
+     */
+    static Vec3 decodeDirection(short packed) {
+        double u = ((packed >> 8) & 0xFF) / DIRECTION_SCALE * 2.0 - 1.0;
+        double v = (packed & 0xFF) / DIRECTION_SCALE * 2.0 - 1.0;
+        double z = 1.0 - Math.abs(u) - Math.abs(v);
+        if (z < 0) {
+            double unfoldedU = (1.0 - Math.abs(v)) * signNotZero(u);
+            double unfoldedV = (1.0 - Math.abs(u)) * signNotZero(v);
+            u = unfoldedU;
+            v = unfoldedV;
+        }
+        return new Vec3(u, v, z).normalize();
+    }
+
+    private static short encodeUV(double u, double v) {
+        int qu = (int) Math.round((u * 0.5 + 0.5) * DIRECTION_SCALE);
+        int qv = (int) Math.round((v * 0.5 + 0.5) * DIRECTION_SCALE);
+        return (short) ((qu << 8) | qv);
+    }
+
+    private static double signNotZero(double value) {
+        return value >= 0.0 ? 1.0 : -1.0;
+    }
+}
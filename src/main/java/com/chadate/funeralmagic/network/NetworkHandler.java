@@ -1,50 +1,369 @@
 package com.chadate.funeralmagic.network;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.chadate.funeralmagic.SomeFunStuff;
+import com.chadate.funeralmagic.capability.ShieldCapabilities;
+import com.chadate.funeralmagic.capability.ShieldCapability;
 
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ChunkMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.server.network.ServerPlayerConnection;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.Vec3;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.network.PacketDistributor;
 import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
 import net.neoforged.neoforge.network.registration.PayloadRegistrar;
 
 /**
  * 网络处理器
- * 负责注册所有的网络包
+ * 负责注册所有的网络包，并按每个玩家支持的协议版本发送护盾数据
+ *
+ * v1 和 v2 两套网络包使用不同的通道，都注册为可选通道：
+ * 连接建立时 NeoForge 按通道协商，旧客户端只有 v1 通道，新客户端两套都有。
+ * 发送时优先使用 v2 紧凑格式，对方没有 v2 通道时回退到 v1；两套都没有（未安装本模组）时不发送。
  */
 @EventBusSubscriber(modid = SomeFunStuff.MODID)
 public class NetworkHandler {
     
     /**
-     * 网络协议版本
+     * 网络协议版本（v1：定长字段）
      */
     private static final String PROTOCOL_VERSION = "1";
+
+    /**
+     * 网络协议版本（v2：varint、量化和八面体编码）
+     */
+    private static final String PROTOCOL_VERSION_V2 = "2";
     
     /**
      * 注册网络包
      */
     @SubscribeEvent
     public static void registerPayloads(RegisterPayloadHandlersEvent event) {
-        PayloadRegistrar registrar = event.registrar(PROTOCOL_VERSION);
+        PayloadRegistrar registrar = event.registrar(PROTOCOL_VERSION).optional();
         
         // 注册护盾数据同步包（服务端 -> 客户端）
         registrar.playToClient(
             ShieldDataSyncPacket.TYPE,
-            ShieldDataSyncPacket.STREAM_CODEC,
+            PayloadMetrics.counting(ShieldDataSyncPacket.TYPE, ShieldDataSyncPacket.STREAM_CODEC),
             ShieldDataSyncPacket::handleClient
         );
         
         // 注册护盾击中效果包（服务端 -> 客户端）
         registrar.playToClient(
             ShieldImpactPacket.TYPE,
-            ShieldImpactPacket.STREAM_CODEC,
+            PayloadMetrics.counting(ShieldImpactPacket.TYPE, ShieldImpactPacket.STREAM_CODEC),
             ShieldImpactPacket::handleClient
         );
         
         // 注册护盾破碎效果包（服务端 -> 客户端）
         registrar.playToClient(
             ShieldShatterPacket.TYPE,
-            ShieldShatterPacket.STREAM_CODEC,
+            PayloadMetrics.counting(ShieldShatterPacket.TYPE, ShieldShatterPacket.STREAM_CODEC),
             ShieldShatterPacket::handleClient
         );
+
+        PayloadRegistrar compact = event.registrar(PROTOCOL_VERSION_V2).optional();
+
+        // v2 紧凑格式
+        compact.playToClient(
+            ShieldDataSyncPacketV2.TYPE,
+            PayloadMetrics.counting(ShieldDataSyncPacketV2.TYPE, ShieldDataSyncPacketV2.STREAM_CODEC),
+            ShieldDataSyncPacketV2::handleClient
+        );
+        compact.playToClient(
+            ShieldImpactPacketV2.TYPE,
+            PayloadMetrics.counting(ShieldImpactPacketV2.TYPE, ShieldImpactPacketV2.STREAM_CODEC),
+            ShieldImpactPacketV2::handleClient
+        );
+        compact.playToClient(
+            ShieldShatterPacketV2.TYPE,
+            PayloadMetrics.counting(ShieldShatterPacketV2.TYPE, ShieldShatterPacketV2.STREAM_CODEC),
+            ShieldShatterPacketV2::handleClient
+        );
+        compact.playToClient(
+            ShieldSnapshotPacket.TYPE,
+            PayloadMetrics.counting(ShieldSnapshotPacket.TYPE, ShieldSnapshotPacket.STREAM_CODEC),
+            ShieldSnapshotPacket::handleClient
+        );
+    }
+
+    /**
+     * 客户端是否支持 v2 紧凑格式
+     */
+    public static boolean supportsCompact(ServerPlayer player) {
+        return player.connection.hasChannel(ShieldDataSyncPacketV2.TYPE);
+    }
+
+    /**
+     * 向正在追踪该实体的玩家（实体是玩家时也包括自己）同步护盾数据
+     */
+    public static void sendShieldState(Entity entity, ShieldCapability shield) {
+        int compactRecipients = 0;
+        int legacyRecipients = 0;
+        for (ServerPlayer player : getTrackingPlayers(entity)) {
+            int version = sendShieldStateTo(player, entity, shield);
+            if (version == 2) {
+                compactRecipients++;
+            } else if (version == 1) {
+                legacyRecipients++;
+            }
+        }
+        recordShieldStateSends(compactRecipients, legacyRecipients);
+    }
+
+    /**
+     * 向一个玩家同步实体的护盾数据
+     */
+    public static void sendShieldState(ServerPlayer player, Entity entity, ShieldCapability shield) {
+        int version = sendShieldStateTo(player, entity, shield);
+        recordShieldStateSends(version == 2 ? 1 : 0, version == 1 ? 1 : 0);
+    }
+
+    /**
+     * 向一个玩家同步实体的护盾数据，不记录流量统计
+     * 向多个玩家广播同一个状态时由调用方汇总，用 {@link #recordShieldStateSends} 记录为一次发送
+     *
+     * @return 使用的协议版本（2 或 1），对方没有安装本模组时为0
+     */
+    public static int sendShieldStateTo(ServerPlayer player, Entity entity, ShieldCapability shield) {
+        if (supportsCompact(player)) {
+            send(player, new ShieldDataSyncPacketV2(
+                entity.getId(), shield.active(), shield.radius(), shield.strength()));
+            return 2;
+        }
+        if (player.connection.hasChannel(ShieldDataSyncPacket.TYPE)) {
+            send(player, new ShieldDataSyncPacket(
+                entity.getId(), shield.active(), shield.radius(), shield.strength()));
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * 记录一次护盾状态广播中两个版本各自的接收者数量
+     */
+    public static void recordShieldStateSends(int compactRecipients, int legacyRecipients) {
+        recordSends(ShieldDataSyncPacketV2.TYPE, compactRecipients, ShieldDataSyncPacket.TYPE, legacyRecipients);
+    }
+
+    /**
+     * 向一个玩家发送一组实体的护盾状态快照
+     * v2 客户端按大小上限拆成若干个 {@link ShieldSnapshotPacket}；v1 客户端回退为每个实体一个同步包
+     */
+    public static void sendSnapshot(ServerPlayer player, List<? extends Entity> entities) {
+        if (entities.isEmpty()) {
+            return;
+        }
+
+        if (!supportsCompact(player)) {
+            for (Entity entity : entities) {
+                ShieldCapability shield = ShieldCapabilities.getShield(entity);
+                if (shield != null) {
+                    sendShieldState(player, entity, shield);
+                }
+            }
+            return;
+        }
+
+        List<ShieldDataSyncPacketV2> batch = new ArrayList<>();
+        int batchBytes = ShieldSnapshotPacket.HEADER_BYTES;
+        for (Entity entity : entities) {
+            ShieldCapability shield = ShieldCapabilities.getShield(entity);
+            if (shield == null) {
+                continue;
+            }
+
+            ShieldDataSyncPacketV2 entry = new ShieldDataSyncPacketV2(
+                entity.getId(), shield.active(), shield.radius(), shield.strength());
+            int entryBytes = entry.encodedSize();
+            if (!batch.isEmpty() && batchBytes + entryBytes > ShieldSnapshotPacket.MAX_PAYLOAD_BYTES) {
+                send(player, new ShieldSnapshotPacket(batch));
+                PayloadMetrics.recordSend(ShieldSnapshotPacket.TYPE, 1);
+                batch = new ArrayList<>();
+                batchBytes = ShieldSnapshotPacket.HEADER_BYTES;
+            }
+            batch.add(entry);
+            batchBytes += entryBytes;
+        }
+        if (!batch.isEmpty()) {
+            send(player, new ShieldSnapshotPacket(batch));
+            PayloadMetrics.recordSend(ShieldSnapshotPacket.TYPE, 1);
+        }
+    }
+
+    /**
+     * 向正在追踪该实体的玩家发送本tick内的击中效果
+     *
+     * @param directions 从护盾中心指向击中点的单位方向，每个方向连续3个分量
+     * @param count 方向数量
+     */
+    public static void sendImpacts(Entity entity, float[] directions, int count) {
+        List<ServerPlayer> players = getTrackingPlayers(entity);
+        if (players.isEmpty()) {
+            return;
+        }
+
+        ShieldImpactPacketV2 compact = null;
+        ShieldImpactPacket[] legacy = null;
+        int compactRecipients = 0;
+        int legacyRecipients = 0;
+        for (ServerPlayer player : players) {
+            if (supportsCompact(player)) {
+                if (compact == null) {
+                    short[] encoded = new short[count];
+                    for (int i = 0; i < count; i++) {
+                        encoded[i] = ShieldImpactPacketV2.encodeDirection(
+                            directions[i * 3], directions[i * 3 + 1], directions[i * 3 + 2]);
+                    }
+                    compact = new ShieldImpactPacketV2(entity.getId(), encoded);
+                }
+                send(player, compact);
+                compactRecipients++;
+            } else if (player.connection.hasChannel(ShieldImpactPacket.TYPE)) {
+                // v1 每个击中一个包，击中位置取护盾中心沿方向一格处，客户端只用它计算方向
+                if (legacy == null) {
+                    Vec3 center = new Vec3(entity.getX(), entity.getY() + entity.getEyeHeight() / 2, entity.getZ());
+                    legacy = new ShieldImpactPacket[count];
+                    for (int i = 0; i < count; i++) {
+                        Vec3 hit = center.add(directions[i * 3], directions[i * 3 + 1], directions[i * 3 + 2]);
+                        legacy[i] = new ShieldImpactPacket(entity.getId(), hit, center);
+                    }
+                }
+                for (ShieldImpactPacket packet : legacy) {
+                    send(player, packet);
+                }
+                legacyRecipients++;
+            }
+        }
+        recordSends(ShieldImpactPacketV2.TYPE, compactRecipients, ShieldImpactPacket.TYPE, legacyRecipients);
+    }
+
+    /**
+     * 向正在追踪该实体的玩家发送护盾破碎效果
+     */
+    public static void sendShatter(Entity entity, double centerX, double centerY, double centerZ, double radius) {
+        List<ServerPlayer> players = getTrackingPlayers(entity);
+        if (players.isEmpty()) {
+            return;
+        }
+
+        ShieldShatterPacketV2 compact = null;
+        ShieldShatterPacket legacy = null;
+        int compactRecipients = 0;
+        int legacyRecipients = 0;
+        for (ServerPlayer player : players) {
+            if (supportsCompact(player)) {
+                if (compact == null) {
+                    compact = ShieldShatterPacketV2.of(entity, centerX, centerY, centerZ, radius);
+                }
+                send(player, compact);
+                compactRecipients++;
+            } else if (player.connection.hasChannel(ShieldShatterPacket.TYPE)) {
+                if (legacy == null) {
+                    legacy = new ShieldShatterPacket(entity.getId(), centerX, centerY, centerZ, radius);
+                }
+                send(player, legacy);
+                legacyRecipients++;
+            }
+        }
+        recordSends(ShieldShatterPacketV2.TYPE, compactRecipients, ShieldShatterPacket.TYPE, legacyRecipients);
+    }
+
+    /**
+     * 正在追踪该实体的玩家（实体是玩家时也包括自己）
+     * 其他维度和视距外的玩家看不到这个实体，不需要接收；
+     * 开始追踪时会在 StartTracking 事件中补发护盾状态
+     *
+     * 直接读取原版实体追踪器的 seenBy 集合（通过访问转换器公开），与原版实体数据包的接收者完全一致。
+     * 不使用 PacketDistributor.sendToPlayersTrackingEntity，因为发送的包要按每个玩家的协议版本选择
+     */
+    public static List<ServerPlayer> getTrackingPlayers(Entity entity) {
+        List<ServerPlayer> players = new ArrayList<>();
+        if (!(entity.level() instanceof ServerLevel level)) {
+            return players;
+        }
+        if (entity instanceof ServerPlayer self) {
+            players.add(self);
+        }
+
+        ChunkMap.TrackedEntity tracked = level.getChunkSource().chunkMap.entityMap.get(entity.getId());
+        if (tracked != null) {
+            for (ServerPlayerConnection connection : tracked.seenBy) {
+                players.add(connection.getPlayer());
+            }
+        }
+        return players;
+    }
+
+    /**
+     * 玩家当前是否在追踪该实体（实体是玩家自己时也算）
+     */
+    public static boolean isTracking(ServerPlayer player, Entity entity) {
+        if (player == entity) {
+            return true;
+        }
+        if (!(entity.level() instanceof ServerLevel level) || player.level() != level) {
+            return false;
+        }
+
+        ChunkMap.TrackedEntity tracked = level.getChunkSource().chunkMap.entityMap.get(entity.getId());
+        return tracked != null && tracked.seenBy.contains(player.connection);
+    }
+
+    /**
+     * 玩家是否在实体的追踪范围内，与原版 ChunkMap.TrackedEntity.updatePlayer 的判定相同：
+     * 水平距离不超过实体的有效追踪范围和玩家的视距，且实体允许向该玩家广播
+     *
+     * 只用于预测：登录或切换维度时追踪器还没有更新，护盾快照用它挑出玩家即将追踪的实体。
+     * 发送给已经在追踪的玩家时使用 {@link #getTrackingPlayers} 和 {@link #isTracking}
+     */
+    public static boolean isWithinTrackingRange(ServerPlayer player, Entity entity) {
+        if (player.level() != entity.level()) {
+            return false;
+        }
+
+        int viewDistance = Mth.clamp(player.requestedViewDistance(), 2, player.server.getPlayerList().getViewDistance());
+        int range = Math.min(getEffectiveTrackingRange(player.server, entity), viewDistance * 16);
+        double dx = player.getX() - entity.getX();
+        double dz = player.getZ() - entity.getZ();
+        return dx * dx + dz * dz <= (double) range * range && entity.broadcastToPlayer(player);
+    }
+
+    /**
+     * 实体的有效追踪范围（方块）
+     * 取实体和所有间接乘客中最大的追踪范围，再按服务器的 entity-broadcast-range-percentage 缩放
+     */
+    private static int getEffectiveTrackingRange(MinecraftServer server, Entity entity) {
+        int range = entity.getType().clientTrackingRange() * 16;
+        for (Entity passenger : entity.getIndirectPassengers()) {
+            range = Math.max(range, passenger.getType().clientTrackingRange() * 16);
+        }
+        return server.getScaledTrackingDistance(range);
+    }
+
+    /**
+     * 记录一次广播中两个版本各自的接收者数量
+     */
+    private static void recordSends(CustomPacketPayload.Type<?> compactType, int compactRecipients,
+            CustomPacketPayload.Type<?> legacyType, int legacyRecipients) {
+        if (compactRecipients > 0) {
+            PayloadMetrics.recordSend(compactType, compactRecipients);
+        }
+        if (legacyRecipients > 0) {
+            PayloadMetrics.recordSend(legacyType, legacyRecipients);
+        }
+    }
+
+    private static void send(ServerPlayer player, CustomPacketPayload payload) {
+        PacketDistributor.sendToPlayer(player, payload);
     }
 }
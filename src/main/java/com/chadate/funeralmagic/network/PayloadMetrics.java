@@ -0,0 +1,276 @@
+package com.chadate.funeralmagic.network;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.chadate.funeralmagic.Config;
+import com.chadate.funeralmagic.SomeFunStuff;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.fml.loader.FMLPaths;
+
+/**
+ * 网络包统计（按网络包类型）
+ *
+ * 注册时用 {@link #counting} 包装每个网络包的编码器，统计实际写到连接上的包数量和字节数；
+ * 编码在网络线程上进行，计数器使用 {@link LongAdder}。
+ * 单人游戏的本地连接不编码网络包，只有发送次数、接收者和合并计数。
+ *
+ * 发送次数和接收者数量由 {@link NetworkHandler} 在发送时记录；
+ * 各个合并队列把被合并掉、不再单独发送的包记为"合并"，记在 v2 类型下。
+ * 每秒采样一次累计值，计算最近 {@link #WINDOW_SECONDS} 秒的速率；
+ * 按配置的间隔把统计追加写入 logs/prismaticshield-network.log。
+ */
+public final class PayloadMetrics {
+
+    /**
+     * 速率统计的时间窗口（秒）
+     */
+    public static final int WINDOW_SECONDS = 60;
+
+    private static final String LOG_FILE = "prismaticshield-network.log";
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * Key: 网络包类型ID
+     */
+    private static final Map<ResourceLocation, Counter> COUNTERS = new ConcurrentHashMap<>();
+
+    /**
+     * 已经采样的秒数，以及距离上次写日志的秒数（只在服务端线程上访问）
+     */
+    private static long seconds;
+    private static long secondsSinceLog;
+    private static boolean logFailed;
+
+    private PayloadMetrics() {
+    }
+
+    /**
+     * 一种网络包的计数器
+     */
+    public static final class Counter {
+        private final ResourceLocation id;
+        private final LongAdder packets = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder sends = new LongAdder();
+        private final LongAdder recipients = new LongAdder();
+        private final LongAdder suppressed = new LongAdder();
+
+        /**
+         * 每秒采样的累计包数和字节数（环形缓冲区）
+         */
+        private final long[] packetSamples = new long[WINDOW_SECONDS + 1];
+        private final long[] byteSamples = new long[WINDOW_SECONDS + 1];
+
+        private Counter(ResourceLocation id) {
+            this.id = id;
+        }
+
+        public ResourceLocation id() {
+            return id;
+        }
+
+        public long packets() {
+            return packets.sum();
+        }
+
+        public long bytes() {
+            return bytes.sum();
+        }
+
+        public long sends() {
+            return sends.sum();
+        }
+
+        public long suppressed() {
+            return suppressed.sum();
+        }
+
+        /**
+         * 平均每次发送的接收者数量
+         */
+        public double recipientsPerSend() {
+            long sendCount = sends.sum();
+            return sendCount == 0 ? 0 : (double) recipients.sum() / sendCount;
+        }
+
+        /**
+         * 最近时间窗口内每秒的包数
+         */
+        public double packetsPerSecond() {
+            return rate(packetSamples);
+        }
+
+        /**
+         * 最近时间窗口内每秒的字节数
+         */
+        public double bytesPerSecond() {
+            return rate(byteSamples);
+        }
+
+        private void sample(long second) {
+            int slot = (int) (second % packetSamples.length);
+            packetSamples[slot] = packets.sum();
+            byteSamples[slot] = bytes.sum();
+        }
+
+        private double rate(long[] samples) {
+            long window = Math.min(seconds - 1, WINDOW_SECONDS);
+            if (window <= 0) {
+                return 0;
+            }
+            long latest = samples[(int) ((seconds - 1) % samples.length)];
+            long oldest = samples[(int) ((seconds - 1 - window) % samples.length)];
+            return (double) (latest - oldest) / window;
+        }
+
+        private void reset() {
+            packets.reset();
+            bytes.reset();
+            sends.reset();
+            recipients.reset();
+            suppressed.reset();
+            Arrays.fill(packetSamples, 0);
+            Arrays.fill(byteSamples, 0);
+        }
+    }
+
+    /**
+     * 包装网络包的编码器，统计编码的包数量和字节数
+     */
+    public static <B extends ByteBuf, T extends CustomPacketPayload> StreamCodec<B, T> counting(
+            CustomPacketPayload.Type<T> type, StreamCodec<B, T> codec) {
+        Counter counter = counter(type);
+        return new StreamCodec<>() {
+            @Override
+            public T decode(B buf) {
+                return codec.decode(buf);
+            }
+
+            @Override
+            public void encode(B buf, T value) {
+                int start = buf.writerIndex();
+                codec.encode(buf, value);
+                counter.packets.increment();
+                counter.bytes.add(buf.writerIndex() - start);
+            }
+        };
+    }
+
+    /**
+     * 记录一次发送
+     *
+     * @param recipients 接收这次发送的玩家数量
+     */
+    public static void recordSend(CustomPacketPayload.Type<?> type, int recipients) {
+        Counter counter = counter(type);
+        counter.sends.increment();
+        counter.recipients.add(recipients);
+    }
+
+    /**
+     * 记录一个被合并掉、不再单独发送的包
+     */
+    public static void recordSuppressed(CustomPacketPayload.Type<?> type) {
+        counter(type).suppressed.increment();
+    }
+
+    /**
+     * 每个服务器tick调用一次：每秒采样，按配置的间隔写日志
+     */
+    public static void tick(long tick) {
+        if (tick % 20 != 0) {
+            return;
+        }
+
+        for (Counter counter : COUNTERS.values()) {
+            counter.sample(seconds);
+        }
+        seconds++;
+
+        int logInterval = Config.NETWORK_METRICS_LOG_INTERVAL.get();
+        if (logInterval > 0 && ++secondsSinceLog >= logInterval) {
+            secondsSinceLog = 0;
+            writeLog();
+        }
+    }
+
+    /**
+     * 所有网络包类型的统计，按类型ID排序
+     */
+    public static List<Counter> counters() {
+        List<Counter> counters = new ArrayList<>(COUNTERS.values());
+        counters.sort(Comparator.comparing(counter -> counter.id().toString()));
+        return counters;
+    }
+
+    /**
+     * 一种网络包统计的文字描述
+     */
+    public static String describe(Counter counter) {
+        return String.format(
+            "%s: 发送 %d 次 (平均 %.1f 个接收者), 编码 %d 个包/%d 字节, 合并 %d, 最近 %.1f 包/秒 %.1f 字节/秒",
+            counter.id().getPath(),
+            counter.sends(),
+            counter.recipientsPerSend(),
+            counter.packets(),
+            counter.bytes(),
+            counter.suppressed(),
+            counter.packetsPerSecond(),
+            counter.bytesPerSecond());
+    }
+
+    /**
+     * 清空所有统计
+     */
+    public static void reset() {
+        for (Counter counter : COUNTERS.values()) {
+            counter.reset();
+        }
+        seconds = 0;
+        secondsSinceLog = 0;
+    }
+
+    private static Counter counter(CustomPacketPayload.Type<?> type) {
+        return COUNTERS.computeIfAbsent(type.id(), Counter::new);
+    }
+
+    private static void writeLog() {
+        if (logFailed || COUNTERS.isEmpty()) {
+            return;
+        }
+
+        StringBuilder text = new StringBuilder();
+        String timestamp = LocalDateTime.now().format(TIMESTAMP);
+        for (Counter counter : counters()) {
+            text.append('[').append(timestamp).append("] ").append(describe(counter)).append(System.lineSeparator());
+        }
+
+        Path file = FMLPaths.GAMEDIR.get().resolve("logs").resolve(LOG_FILE);
+        try {
+            Files.createDirectories(file.getParent());
+            Files.writeString(file, text, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            // 写入失败后不再重试，避免每个间隔都刷屏
+            logFailed = true;
+            SomeFunStuff.LOGGER.warn("无法写入网络统计日志 {}", file, e);
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.chadate.funeralmagic.network;
 import com.chadate.funeralmagic.SomeFunStuff;
 import com.chadate.funeralmagic.capability.ShieldCapabilities;
 import com.chadate.funeralmagic.capability.ShieldCapability;
+import com.chadate.funeralmagic.client.PendingShieldStates;
 
 import io.netty.buffer.ByteBuf;
 import net.minecraft.client.Minecraft;
@@ -15,6 +16,8 @@ import net.neoforged.neoforge.network.handling.IPayloadContext;
 /**
  * 护盾数据同步网络包
  * 用于将服务端任意实体的护盾数据同步到客户端
+ *
+ * v1 格式，只发送给不支持 v2 协议的旧客户端，新客户端使用 {@link ShieldDataSyncPacketV2}
  */
 public record ShieldDataSyncPacket(int entityId, boolean active, double radius, int strength) implements CustomPacketPayload {
     
@@ -43,27 +46,40 @@ public record ShieldDataSyncPacket(int entityId, boolean active, double radius,
      * 客户端处理接收到的包
      */
     public static void handleClient(ShieldDataSyncPacket packet, IPayloadContext context) {
-        context.enqueueWork(() -> {
-            Minecraft mc = Minecraft.getInstance();
-            if (mc.level == null) {
-                return;
-            }
-            
-            // 根据entityId查找实体
-            @SuppressWarnings("null")
-            var entity = mc.level.getEntity(packet.entityId);
-            if (entity == null) {
-                return;
+        context.enqueueWork(() -> applyClient(packet.entityId, packet.active, packet.radius, packet.strength));
+    }
+
+    /**
+     * 在客户端应用护盾数据（v1 和 v2 格式共用）
+     */
+    static void applyClient(int entityId, boolean active, double radius, int strength) {
+        Minecraft mc = Minecraft.getInstance();
+        if (mc.level == null) {
+            return;
+        }
+
+        // 根据entityId查找实体
+        @SuppressWarnings("null")
+        var entity = mc.level.getEntity(entityId);
+        if (entity == null) {
+            // 实体还没有生成：用这次同步替换快照中暂存的旧状态，实体加入时再应用
+            PendingShieldStates.put(entityId, active, radius, strength);
+            return;
+        }
+        // 直接同步比快照中暂存的状态更新
+        PendingShieldStates.remove(entityId);
+
+        // 未激活的护盾不需要在客户端保留附件（渲染只关心激活的护盾）
+        if (!active) {
+            if (entity.hasData(ShieldCapabilities.SHIELD_ATTACHMENT)) {
+                entity.removeData(ShieldCapabilities.SHIELD_ATTACHMENT);
             }
-            
-            // 创建新的护盾数据并应用到实体
-            ShieldCapability newShield = new ShieldCapability(
-                packet.active,
-                packet.radius,
-                packet.strength
-            );
-            
-            entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-        });
+            return;
+        }
+
+        // 创建新的护盾数据并应用到实体
+        ShieldCapability newShield = new ShieldCapability(active, radius, strength);
+
+        entity.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
     }
 }
@@ -0,0 +1,74 @@
+package com.chadate.funeralmagic.network;
+
+import com.chadate.funeralmagic.SomeFunStuff;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+
+/**
+ * 护盾数据同步网络包（v2 紧凑格式）
+ *
+ * 实体ID和强度使用varint；激活标志和量化后的半径打包在同一个varint里：
+ * 最低位是激活标志，其余位是以 1/64 格为单位的半径。常见的护盾只需要5~7个字节。
+ */
+public record ShieldDataSyncPacketV2(int entityId, boolean active, double radius, int strength) implements CustomPacketPayload {
+
+    private static final int FLAG_ACTIVE = 1;
+    private static final int FLAG_BITS = 1;
+
+    public static final Type<ShieldDataSyncPacketV2> TYPE =
+        new Type<>(ResourceLocation.fromNamespaceAndPath(SomeFunStuff.MODID, "shield_data_sync_v2"));
+
+    public static final StreamCodec<ByteBuf, ShieldDataSyncPacketV2> STREAM_CODEC = StreamCodec.of(
+        (buf, packet) -> {
+            VarInt.write(buf, packet.entityId());
+            VarInt.write(buf, packet.header());
+            VarInt.write(buf, packet.strength());
+        },
+        buf -> {
+            int entityId = VarInt.read(buf);
+            int header = VarInt.read(buf);
+            int strength = VarInt.read(buf);
+            return new ShieldDataSyncPacketV2(
+                entityId,
+                (header & FLAG_ACTIVE) != 0,
+                CompactEncoding.dequantizeRadius(header >>> FLAG_BITS),
+                strength);
+        }
+    );
+
+    /**
+     * 激活标志和量化半径打包后的值
+     */
+    private int header() {
+        int header = CompactEncoding.quantizeRadius(radius) << FLAG_BITS;
+        if (active) {
+            header |= FLAG_ACTIVE;
+        }
+        return header;
+    }
+
+    /**
+     * 编码后的字节数
+     */
+    public int encodedSize() {
+        return VarInt.getByteSize(entityId) + VarInt.getByteSize(header()) + VarInt.getByteSize(strength);
+    }
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * 客户端处理接收到的包，与 v1 格式的处理方式相同
+     */
+    public static void handleClient(ShieldDataSyncPacketV2 packet, IPayloadContext context) {
+        context.enqueueWork(() -> ShieldDataSyncPacket.applyClient(
+            packet.entityId(), packet.active(), packet.radius(), packet.strength()));
+    }
+}
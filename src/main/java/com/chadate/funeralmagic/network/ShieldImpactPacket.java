@@ -12,8 +12,10 @@ import net.minecraft.world.phys.Vec3;
 import net.neoforged.neoforge.network.handling.IPayloadContext;
 
 /**
- * 护盾击中效果网络包
+ * 护盾击中效果网络包（v1 格式）
  * 从服务端发送到客户端，触发护盾表面的受击视觉效果
+ *
+ * 只发送给不支持 v2 协议的旧客户端，新客户端使用 {@link ShieldImpactPacketV2}
  */
 public record ShieldImpactPacket(int entityId, Vec3 hitPosition, Vec3 shieldCenter) implements CustomPacketPayload {
     
@@ -61,8 +63,9 @@ public record ShieldImpactPacket(int entityId, Vec3 hitPosition, Vec3 shieldCent
      */
     public static void handleClient(ShieldImpactPacket packet, IPayloadContext context) {
         context.enqueueWork(() -> {
-            // 在客户端注册击中效果（传递实体ID、击中位置和护盾中心）
-            ShieldImpactEffect.registerImpact(packet.entityId(), packet.hitPosition(), packet.shieldCenter());
+            // 在客户端注册击中效果（从护盾中心指向击中点的方向）
+            ShieldImpactEffect.registerImpact(packet.entityId(),
+                packet.hitPosition().subtract(packet.shieldCenter()).normalize());
         });
     }
 }
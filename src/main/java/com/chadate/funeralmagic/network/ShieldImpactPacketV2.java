@@ -0,0 +1,98 @@
+package com.chadate.funeralmagic.network;
+
+import static com.chadate.funeralmagic.SomeFunStuff.MODID;
+
+import com.chadate.funeralmagic.client.render.ShieldImpactEffect;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.phys.Vec3;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+
+/**
+ * 护盾击中效果网络包（v2 紧凑格式）
+ *
+ * 一个护盾在同一个tick内受到的所有击中合并成一个包，最多携带 {@link #MAX_DIRECTIONS} 个击中方向。
+ * 击中方向是从护盾中心指向击中点的单位向量，用八面体映射编码成两个字节；
+ * 护盾中心由客户端根据实体位置计算，不需要传输。
+ *
+ * @param directions 八面体编码后的击中方向
+ */
+public record ShieldImpactPacketV2(int entityId, short[] directions) implements CustomPacketPayload {
+
+    /**
+     * 单个包最多携带的击中方向数量
+     */
+    public static final int MAX_DIRECTIONS = 8;
+
+    public static final Type<ShieldImpactPacketV2> TYPE =
+        new Type<>(ResourceLocation.fromNamespaceAndPath(MODID, "shield_impact_v2"));
+
+    public static final StreamCodec<ByteBuf, ShieldImpactPacketV2> STREAM_CODEC =
+        StreamCodec.of(
+            (buf, packet) -> {
+                // 实体ID
+                VarInt.write(buf, packet.entityId());
+                // 击中方向数量 + 编码后的方向
+                int count = packet.directionCount();
+                buf.writeByte(count);
+                for (int i = 0; i < count; i++) {
+                    buf.writeShort(packet.directions()[i]);
+                }
+            },
+            buf -> {
+                int entityId = VarInt.read(buf);
+                int count = buf.readUnsignedByte();
+                // 超出容量的方向也要读完，但不保留
+                short[] directions = new short[Math.min(count, MAX_DIRECTIONS)];
+                for (int i = 0; i < count; i++) {
+                    short direction = buf.readShort();
+                    if (i < directions.length) {
+                        directions[i] = direction;
+                    }
+                }
+                return new ShieldImpactPacketV2(entityId, directions);
+            }
+        );
+
+    /**
+     * 编码一个击中方向
+     */
+    public static short encodeDirection(double x, double y, double z) {
+        return CompactEncoding.encodeDirection(x, y, z);
+    }
+
+    /**
+     * 包中的击中方向数量
+     */
+    public int directionCount() {
+        return Math.min(directions.length, MAX_DIRECTIONS);
+    }
+
+    /**
+     * 还原第 index 个击中方向
+     */
+    public Vec3 direction(int index) {
+        return CompactEncoding.decodeDirection(directions[index]);
+    }
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * 处理客户端接收到的击中效果包
+     */
+    public static void handleClient(ShieldImpactPacketV2 packet, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            // 在客户端为每个击中方向注册击中效果
+            for (int i = 0; i < packet.directionCount(); i++) {
+                ShieldImpactEffect.registerImpact(packet.entityId(), packet.direction(i));
+            }
+        });
+    }
+}
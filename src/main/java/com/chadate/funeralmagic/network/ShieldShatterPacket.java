@@ -12,7 +12,8 @@ import net.minecraft.world.phys.Vec3;
 import net.neoforged.neoforge.network.handling.IPayloadContext;
 
 /**
- * 护盾破碎效果网络包（服务端 -> 客户端）
+ * 护盾破碎效果网络包（v1 格式，服务端 -> 客户端）
+ * 只发送给不支持 v2 协议的旧客户端，新客户端使用 {@link ShieldShatterPacketV2}
  */
 public record ShieldShatterPacket(int entityId, double centerX, double centerY, double centerZ, double radius) implements CustomPacketPayload {
     
@@ -0,0 +1,85 @@
+package com.chadate.funeralmagic.network;
+
+import com.chadate.funeralmagic.SomeFunStuff;
+import com.chadate.funeralmagic.client.render.ShieldShatterEffect;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.phys.Vec3;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+
+/**
+ * 护盾破碎效果网络包（v2 紧凑格式，服务端 -> 客户端）
+ *
+ * 护盾中心以相对实体位置的偏移传输，每个分量量化成一个short；半径量化后用varint写出。
+ * 客户端用自己那一份实体的位置还原护盾中心。
+ */
+public record ShieldShatterPacketV2(int entityId, short offsetX, short offsetY, short offsetZ, int radius)
+        implements CustomPacketPayload {
+
+    public static final Type<ShieldShatterPacketV2> TYPE =
+        new Type<>(ResourceLocation.fromNamespaceAndPath(SomeFunStuff.MODID, "shield_shatter_v2"));
+
+    public static final StreamCodec<ByteBuf, ShieldShatterPacketV2> STREAM_CODEC = StreamCodec.of(
+        (buf, packet) -> {
+            VarInt.write(buf, packet.entityId());
+            buf.writeShort(packet.offsetX());
+            buf.writeShort(packet.offsetY());
+            buf.writeShort(packet.offsetZ());
+            VarInt.write(buf, packet.radius());
+        },
+        buf -> new ShieldShatterPacketV2(
+            VarInt.read(buf),
+            buf.readShort(),
+            buf.readShort(),
+            buf.readShort(),
+            VarInt.read(buf))
+    );
+
+    /**
+     * 根据实体当前位置创建破碎包
+     */
+    public static ShieldShatterPacketV2 of(Entity entity, double centerX, double centerY, double centerZ, double radius) {
+        return new ShieldShatterPacketV2(
+            entity.getId(),
+            CompactEncoding.quantizeOffset(centerX - entity.getX()),
+            CompactEncoding.quantizeOffset(centerY - entity.getY()),
+            CompactEncoding.quantizeOffset(centerZ - entity.getZ()),
+            CompactEncoding.quantizeRadius(radius));
+    }
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * 客户端处理破碎效果
+     */
+    public static void handleClient(ShieldShatterPacketV2 packet, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            Minecraft mc = Minecraft.getInstance();
+            if (mc.level == null) {
+                return;
+            }
+
+            // 护盾中心相对实体传输，客户端没有这个实体时无法还原位置
+            Entity entity = mc.level.getEntity(packet.entityId());
+            if (entity == null) {
+                return;
+            }
+
+            Vec3 center = new Vec3(
+                entity.getX() + CompactEncoding.dequantizeOffset(packet.offsetX()),
+                entity.getY() + CompactEncoding.dequantizeOffset(packet.offsetY()),
+                entity.getZ() + CompactEncoding.dequantizeOffset(packet.offsetZ()));
+            ShieldShatterEffect.triggerShatter(packet.entityId(), center,
+                CompactEncoding.dequantizeRadius(packet.radius()));
+        });
+    }
+}
@@ -0,0 +1,84 @@
+package com.chadate.funeralmagic.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.chadate.funeralmagic.SomeFunStuff;
+import com.chadate.funeralmagic.client.PendingShieldStates;
+
+import io.netty.buffer.ByteBuf;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.VarInt;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+
+/**
+ * 护盾状态快照网络包（v2，服务端 -> 客户端）
+ *
+ * 玩家登录或切换维度时，一次性发送玩家将会追踪的所有激活护盾；
+ * 玩家在一个tick内开始追踪的护盾实体也合并成一个快照发送。
+ * 每个条目使用 {@link ShieldDataSyncPacketV2} 的编码；条目较多时拆成多个包，
+ * 每个包不超过 {@link #MAX_PAYLOAD_BYTES}。
+ * 快照通常先于实体生成包到达，客户端还没有的实体会暂存在 {@link PendingShieldStates} 中，
+ * 等实体加入客户端维度时再应用。
+ */
+public record ShieldSnapshotPacket(List<ShieldDataSyncPacketV2> entries) implements CustomPacketPayload {
+
+    /**
+     * 单个快照包的大小上限（字节）
+     */
+    public static final int MAX_PAYLOAD_BYTES = 8192;
+
+    /**
+     * 条目数量前缀的最大字节数
+     */
+    public static final int HEADER_BYTES = 3;
+
+    public static final Type<ShieldSnapshotPacket> TYPE =
+        new Type<>(ResourceLocation.fromNamespaceAndPath(SomeFunStuff.MODID, "shield_snapshot"));
+
+    public static final StreamCodec<ByteBuf, ShieldSnapshotPacket> STREAM_CODEC = StreamCodec.of(
+        (buf, packet) -> {
+            VarInt.write(buf, packet.entries().size());
+            for (ShieldDataSyncPacketV2 entry : packet.entries()) {
+                ShieldDataSyncPacketV2.STREAM_CODEC.encode(buf, entry);
+            }
+        },
+        buf -> {
+            int count = VarInt.read(buf);
+            List<ShieldDataSyncPacketV2> entries = new ArrayList<>(Math.min(count, MAX_PAYLOAD_BYTES / 3));
+            for (int i = 0; i < count; i++) {
+                entries.add(ShieldDataSyncPacketV2.STREAM_CODEC.decode(buf));
+            }
+            return new ShieldSnapshotPacket(entries);
+        }
+    );
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /**
+     * 客户端处理快照：已有的实体直接应用，其余的暂存
+     */
+    public static void handleClient(ShieldSnapshotPacket packet, IPayloadContext context) {
+        context.enqueueWork(() -> {
+            Minecraft mc = Minecraft.getInstance();
+            if (mc.level == null) {
+                return;
+            }
+
+            for (ShieldDataSyncPacketV2 entry : packet.entries()) {
+                if (mc.level.getEntity(entry.entityId()) != null) {
+                    ShieldDataSyncPacket.applyClient(
+                        entry.entityId(), entry.active(), entry.radius(), entry.strength());
+                } else if (entry.active()) {
+                    PendingShieldStates.put(entry.entityId(), entry.active(), entry.radius(), entry.strength());
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,105 @@
+package com.chadate.funeralmagic.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单个弹射物的候选护盾缓存
+ *
+ * 宽相位查询时把弹射物路径包围盒向外扩展一段余量，记录扩展后的包围盒内的所有护盾。
+ * 之后的每个tick，只要本tick的路径包围盒仍然落在"缓存包围盒向内收缩 护盾最大速度 x 经过的tick数"之内，
+ * 缓存外的护盾就不可能与路径相交，直接从缓存中筛选候选护盾即可。
+ * 护盾加入、移除、半径变大，或者有护盾比缓存时更快，缓存立即失效。
+ */
+final class CandidateCache {
+
+    private final List<ShieldRegistry.Entry> shields = new ArrayList<>();
+
+    private double minX;
+    private double minY;
+    private double minZ;
+    private double maxX;
+    private double maxY;
+    private double maxZ;
+
+    /**
+     * 建立缓存时的护盾集合版本号、护盾最大速度和游戏时间
+     */
+    private int version;
+    private double shieldSpeed;
+    private long tick = ProjectileTracker.NEVER;
+
+    /**
+     * 上一次使用缓存的游戏时间，中间有tick没有检测时缓存失效
+     */
+    private long lastUsed = ProjectileTracker.NEVER;
+
+    /**
+     * 使缓存失效
+     */
+    void invalidate() {
+        tick = ProjectileTracker.NEVER;
+        shields.clear();
+    }
+
+    /**
+     * 缓存是否仍然覆盖本tick的路径包围盒
+     */
+    boolean covers(ShieldRegistry registry, long currentTime,
+            double pathMinX, double pathMinY, double pathMinZ,
+            double pathMaxX, double pathMaxY, double pathMaxZ) {
+        if (tick == ProjectileTracker.NEVER
+                || lastUsed != currentTime - 1
+                || version != registry.version()
+                || registry.maxSpeed() > shieldSpeed) {
+            return false;
+        }
+
+        // 缓存外的护盾最多向内移动了这么远
+        double shrink = (currentTime - tick) * shieldSpeed;
+        return pathMinX >= minX + shrink && pathMaxX <= maxX - shrink
+                && pathMinY >= minY + shrink && pathMaxY <= maxY - shrink
+                && pathMinZ >= minZ + shrink && pathMaxZ <= maxZ - shrink;
+    }
+
+    /**
+     * 重新执行宽相位查询并建立缓存
+     *
+     * @param padding 路径包围盒向外扩展的余量
+     */
+    void refill(ShieldRegistry registry, long currentTime,
+            double pathMinX, double pathMinY, double pathMinZ,
+            double pathMaxX, double pathMaxY, double pathMaxZ,
+            double padding) {
+        minX = pathMinX - padding;
+        minY = pathMinY - padding;
+        minZ = pathMinZ - padding;
+        maxX = pathMaxX + padding;
+        maxY = pathMaxY + padding;
+        maxZ = pathMaxZ + padding;
+        version = registry.version();
+        shieldSpeed = registry.maxSpeed();
+        tick = currentTime;
+
+        shields.clear();
+        registry.query(minX, minY, minZ, maxX, maxY, maxZ, shields);
+    }
+
+    /**
+     * 从缓存中筛选包围盒与本tick路径相交的护盾
+     *
+     * @param out 结果追加到这个列表中
+     */
+    void collect(long currentTime,
+            double pathMinX, double pathMinY, double pathMinZ,
+            double pathMaxX, double pathMaxY, double pathMaxZ,
+            List<ShieldRegistry.Entry> out) {
+        lastUsed = currentTime;
+        for (int i = 0, n = shields.size(); i < n; i++) {
+            ShieldRegistry.Entry entry = shields.get(i);
+            if (entry.intersects(pathMinX, pathMinY, pathMinZ, pathMaxX, pathMaxY, pathMaxZ)) {
+                out.add(entry);
+            }
+        }
+    }
+}
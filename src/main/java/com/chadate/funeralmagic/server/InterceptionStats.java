@@ -0,0 +1,111 @@
+package com.chadate.funeralmagic.server;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * 弹射物拦截的性能统计（每个 {@link ShieldInterceptor} 一份）
+ *
+ * 用 HotSpot 的线程内存分配计数器测量检测阶段（唤醒、宽相位、窄相位）在服务端线程上分配的字节数，
+ * 换算成每个弹射物每tick的分配量。偏转阶段会创建数据包，不计入检测阶段。
+ * JVM 不支持线程分配计数时只统计次数和耗时。
+ */
+public final class InterceptionStats {
+
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN = allocationBean();
+
+    private long ticks;
+    private long projectileTicks;
+    private long hits;
+    private long detectBytes;
+    private long detectNanos;
+
+    private long startBytes;
+    private long startNanos;
+
+    /**
+     * 检测阶段开始
+     */
+    void beginDetect() {
+        startBytes = allocatedBytes();
+        startNanos = System.nanoTime();
+    }
+
+    /**
+     * 检测阶段结束
+     *
+     * @param projectiles 本tick检测过的弹射物数量
+     */
+    void endDetect(int projectiles) {
+        detectNanos += System.nanoTime() - startNanos;
+        detectBytes += allocatedBytes() - startBytes;
+        projectileTicks += projectiles;
+        ticks++;
+    }
+
+    void recordHit() {
+        hits++;
+    }
+
+    /**
+     * 清空统计数据
+     */
+    public void reset() {
+        ticks = 0;
+        projectileTicks = 0;
+        hits = 0;
+        detectBytes = 0;
+        detectNanos = 0;
+    }
+
+    /**
+     * 是否能测量内存分配
+     */
+    public static boolean isAllocationSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    public long ticks() {
+        return ticks;
+    }
+
+    public long projectileTicks() {
+        return projectileTicks;
+    }
+
+    public long hits() {
+        return hits;
+    }
+
+    /**
+     * 检测阶段平均每个弹射物每tick分配的字节数
+     */
+    public double bytesPerProjectileTick() {
+        return projectileTicks == 0 ? 0 : (double) detectBytes / projectileTicks;
+    }
+
+    /**
+     * 检测阶段平均每tick的耗时（微秒）
+     */
+    public double microsPerTick() {
+        return ticks == 0 ? 0 : detectNanos / 1000.0 / ticks;
+    }
+
+    private static long allocatedBytes() {
+        return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : 0;
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean sunBean
+                && sunBean.isThreadAllocatedMemorySupported()) {
+            try {
+                sunBean.setThreadAllocatedMemoryEnabled(true);
+                return sunBean;
+            } catch (UnsupportedOperationException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
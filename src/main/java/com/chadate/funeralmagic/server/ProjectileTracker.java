@@ -0,0 +1,262 @@
+package com.chadate.funeralmagic.server;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.projectile.Projectile;
+
+import java.util.Arrays;
+
+/**
+ * 弹射物状态表（每个服务端维度一个，由 {@link ShieldInterceptor} 持有）
+ *
+ * 以实体ID为键的开放寻址哈希表，只负责把ID映射到槽位；
+ * 弹射物的状态按槽位存放在紧凑的并行数组中，遍历时顺序访问，热路径上不产生任何分配。
+ * 条目在实体离开维度时移除（用最后一个槽位填补空位），不再依赖定期清理。
+ */
+public final class ProjectileTracker {
+
+    /**
+     * 尚未被拦截过的弹射物的拦截时间
+     */
+    public static final long NEVER = Long.MIN_VALUE;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * 哈希表：实体ID -> 槽位 + 1（0 表示空位）
+     */
+    private int[] tableKeys = new int[INITIAL_CAPACITY * 2];
+    private int[] tableSlots = new int[INITIAL_CAPACITY * 2];
+    private int mask = INITIAL_CAPACITY * 2 - 1;
+
+    /**
+     * 按槽位存放的弹射物状态
+     */
+    private Projectile[] projectiles = new Projectile[INITIAL_CAPACITY];
+    private Entity[] owners = new Entity[INITIAL_CAPACITY];
+    private double[] lastX = new double[INITIAL_CAPACITY];
+    private double[] lastY = new double[INITIAL_CAPACITY];
+    private double[] lastZ = new double[INITIAL_CAPACITY];
+    private long[] deflectTicks = new long[INITIAL_CAPACITY];
+    private boolean[] sleeping = new boolean[INITIAL_CAPACITY];
+    private CandidateCache[] caches = new CandidateCache[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * 开始追踪弹射物（已追踪时忽略）
+     */
+    public void add(Projectile projectile) {
+        int id = projectile.getId();
+        if (find(id) >= 0) {
+            return;
+        }
+
+        if (size == projectiles.length) {
+            grow();
+        }
+        int slot = size++;
+        projectiles[slot] = projectile;
+        owners[slot] = projectile.getOwner();
+        // 还没有记录过位置，第一次检测时一定不会被当成静止
+        lastX[slot] = Double.NaN;
+        lastY[slot] = Double.NaN;
+        lastZ[slot] = Double.NaN;
+        deflectTicks[slot] = NEVER;
+        sleeping[slot] = false;
+        if (caches[slot] == null) {
+            caches[slot] = new CandidateCache();
+        } else {
+            caches[slot].invalidate();
+        }
+        insert(id, slot);
+    }
+
+    /**
+     * 停止追踪实体（未追踪时忽略）
+     */
+    public void remove(int id) {
+        int slot = find(id);
+        if (slot >= 0) {
+            removeSlot(slot);
+        }
+    }
+
+    /**
+     * 移除槽位上的弹射物
+     * 最后一个槽位会被移动到这里填补空位，遍历时应当从后往前进行
+     */
+    public void removeSlot(int slot) {
+        deleteAt(indexOf(projectiles[slot].getId()));
+
+        int last = --size;
+        if (slot != last) {
+            projectiles[slot] = projectiles[last];
+            owners[slot] = owners[last];
+            lastX[slot] = lastX[last];
+            lastY[slot] = lastY[last];
+            lastZ[slot] = lastZ[last];
+            deflectTicks[slot] = deflectTicks[last];
+            sleeping[slot] = sleeping[last];
+            // 交换缓存对象，空出来的缓存留给下一个加入的弹射物复用
+            CandidateCache cache = caches[slot];
+            caches[slot] = caches[last];
+            caches[last] = cache;
+            tableSlots[indexOf(projectiles[slot].getId())] = slot + 1;
+        }
+        projectiles[last] = null;
+        owners[last] = null;
+    }
+
+    /**
+     * 查找弹射物所在的槽位
+     *
+     * @return 槽位，未追踪时返回 -1
+     */
+    public int find(int id) {
+        int index = indexOf(id);
+        return index < 0 ? -1 : tableSlots[index] - 1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public Projectile projectile(int slot) {
+        return projectiles[slot];
+    }
+
+    /**
+     * 弹射物的主人
+     * 缓存在槽位中，缓存的主人已经不在世界中时重新解析
+     */
+    public Entity owner(int slot) {
+        Entity owner = owners[slot];
+        if (owner == null || owner.isRemoved()) {
+            owner = projectiles[slot].getOwner();
+            owners[slot] = owner;
+        }
+        return owner;
+    }
+
+    /**
+     * 重新读取弹射物的主人（主人可能被偏转等操作改变）
+     */
+    public void refreshOwner(int slot) {
+        owners[slot] = projectiles[slot].getOwner();
+    }
+
+    public double lastX(int slot) {
+        return lastX[slot];
+    }
+
+    public double lastY(int slot) {
+        return lastY[slot];
+    }
+
+    public double lastZ(int slot) {
+        return lastZ[slot];
+    }
+
+    /**
+     * 记录弹射物当前的位置
+     */
+    public void setLastPosition(int slot, double x, double y, double z) {
+        lastX[slot] = x;
+        lastY[slot] = y;
+        lastZ[slot] = z;
+    }
+
+    public long deflectTick(int slot) {
+        return deflectTicks[slot];
+    }
+
+    public void setDeflectTick(int slot, long tick) {
+        deflectTicks[slot] = tick;
+    }
+
+    /**
+     * 弹射物是否处于休眠状态（插在地上或静止不动，不参与拦截）
+     */
+    public boolean isSleeping(int slot) {
+        return sleeping[slot];
+    }
+
+    public void setSleeping(int slot, boolean value) {
+        sleeping[slot] = value;
+    }
+
+    /**
+     * 弹射物的候选护盾缓存
+     */
+    CandidateCache candidates(int slot) {
+        return caches[slot];
+    }
+
+    private void grow() {
+        int capacity = projectiles.length * 2;
+        projectiles = Arrays.copyOf(projectiles, capacity);
+        owners = Arrays.copyOf(owners, capacity);
+        lastX = Arrays.copyOf(lastX, capacity);
+        lastY = Arrays.copyOf(lastY, capacity);
+        lastZ = Arrays.copyOf(lastZ, capacity);
+        deflectTicks = Arrays.copyOf(deflectTicks, capacity);
+        sleeping = Arrays.copyOf(sleeping, capacity);
+        caches = Arrays.copyOf(caches, capacity);
+
+        // 哈希表保持不超过一半的装载率
+        int[] oldKeys = tableKeys;
+        int[] oldSlots = tableSlots;
+        tableKeys = new int[capacity * 2];
+        tableSlots = new int[capacity * 2];
+        mask = capacity * 2 - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldSlots[i] != 0) {
+                insert(oldKeys[i], oldSlots[i] - 1);
+            }
+        }
+    }
+
+    private int indexOf(int id) {
+        int index = HashCommon.mix(id) & mask;
+        while (tableSlots[index] != 0) {
+            if (tableKeys[index] == id) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void insert(int id, int slot) {
+        int index = HashCommon.mix(id) & mask;
+        while (tableSlots[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        tableKeys[index] = id;
+        tableSlots[index] = slot + 1;
+    }
+
+    /**
+     * 线性探测的删除：把后面的条目向前移动，保证探测链不断开
+     */
+    private void deleteAt(int index) {
+        int hole = index;
+        int next = (hole + 1) & mask;
+        while (tableSlots[next] != 0) {
+            int home = HashCommon.mix(tableKeys[next]) & mask;
+            // home 不在 (hole, next] 区间内时，条目可以移动到空位
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                tableKeys[hole] = tableKeys[next];
+                tableSlots[hole] = tableSlots[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        tableKeys[hole] = 0;
+        tableSlots[hole] = 0;
+    }
+}
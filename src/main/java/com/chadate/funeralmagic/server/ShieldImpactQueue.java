@@ -0,0 +1,90 @@
+package com.chadate.funeralmagic.server;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import net.minecraft.world.entity.Entity;
+
+import com.chadate.funeralmagic.network.NetworkHandler;
+import com.chadate.funeralmagic.network.PayloadMetrics;
+import com.chadate.funeralmagic.network.ShieldImpactPacketV2;
+
+/**
+ * 护盾击中效果队列
+ *
+ * 同一个护盾在一个tick内受到的所有击中合并成一个包，在服务器tick结束时发送。
+ * 具体格式由 {@link NetworkHandler#sendImpacts} 按每个玩家支持的协议版本决定。
+ * 多重射击的弩和发射器阵列不会再为每一支箭发送一个包。
+ */
+public final class ShieldImpactQueue {
+
+    /**
+     * 本tick内被击中的护盾
+     * Key: 实体ID
+     */
+    private static final Int2ObjectLinkedOpenHashMap<Batch> BATCHES = new Int2ObjectLinkedOpenHashMap<>();
+
+    private ShieldImpactQueue() {
+    }
+
+    /**
+     * 一个护盾在本tick内的击中方向
+     */
+    private static final class Batch {
+        final Entity entity;
+        final float[] directions = new float[ShieldImpactPacketV2.MAX_DIRECTIONS * 3];
+        int count;
+
+        Batch(Entity entity) {
+            this.entity = entity;
+        }
+    }
+
+    /**
+     * 记录一次击中
+     * 超过单个包容量的击中会被丢弃（同一位置附近的闪光本来就会重叠）
+     *
+     * @param nx 从护盾中心指向击中点的单位方向
+     */
+    public static void record(Entity entity, double nx, double ny, double nz) {
+        Batch batch = BATCHES.get(entity.getId());
+        if (batch == null) {
+            batch = new Batch(entity);
+            BATCHES.put(entity.getId(), batch);
+        } else if (batch.count >= ShieldImpactPacketV2.MAX_DIRECTIONS) {
+            return;
+        } else {
+            // 合并到本tick已有的击中包中
+            PayloadMetrics.recordSuppressed(ShieldImpactPacketV2.TYPE);
+        }
+
+        int offset = batch.count * 3;
+        batch.directions[offset] = (float) nx;
+        batch.directions[offset + 1] = (float) ny;
+        batch.directions[offset + 2] = (float) nz;
+        batch.count++;
+    }
+
+    /**
+     * 发送本tick内所有的击中效果
+     * 在服务器tick结束时调用
+     */
+    public static void flush() {
+        if (BATCHES.isEmpty()) {
+            return;
+        }
+
+        for (Batch batch : BATCHES.values()) {
+            if (batch.entity.isRemoved()) {
+                continue;
+            }
+            NetworkHandler.sendImpacts(batch.entity, batch.directions, batch.count);
+        }
+        BATCHES.clear();
+    }
+
+    /**
+     * 服务器关闭时丢弃未发送的击中效果
+     */
+    public static void clear() {
+        BATCHES.clear();
+    }
+}
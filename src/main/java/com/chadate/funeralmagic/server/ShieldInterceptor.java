@@ -0,0 +1,499 @@
+package com.chadate.funeralmagic.server;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.sounds.SoundEvents;
+import net.minecraft.sounds.SoundSource;
+import net.minecraft.util.Mth;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.projectile.Projectile;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.Vec3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.chadate.funeralmagic.capability.ShieldCapabilities;
+import com.chadate.funeralmagic.capability.ShieldCapability;
+import com.chadate.funeralmagic.network.NetworkHandler;
+
+/**
+ * 弹射物拦截器（每个服务端维度一个）
+ *
+ * 在维度tick开始时（所有实体移动之前）统一处理该维度的全部弹射物：
+ * 先对所有弹射物做宽相位 + 窄相位检测并记录命中，再一次性应用所有偏转。
+ * 弹射物集合由实体加入/离开维度事件维护，不再需要监听每个实体的tick事件。
+ */
+public class ShieldInterceptor {
+
+    private static final Map<ServerLevel, ShieldInterceptor> INTERCEPTORS = new HashMap<>();
+
+    /**
+     * 候选护盾缓存的目标有效时间（tick）
+     * 缓存包围盒的余量 = (弹射物速度 + 护盾最大速度) x 这个值，并限制在下面的范围内
+     */
+    private static final int CACHE_TICKS = 10;
+    private static final double MIN_CACHE_PADDING = 2.0;
+    private static final double MAX_CACHE_PADDING = 24.0;
+
+    private final ServerLevel level;
+
+    /**
+     * 维度中所有存活的弹射物及其状态
+     */
+    private final ProjectileTracker tracker = new ProjectileTracker();
+
+    /**
+     * 休眠的弹射物，按休眠时所在的区块段分组
+     * Key: SectionPos.asLong, Value: 实体ID列表
+     */
+    private final Long2ObjectMap<IntArrayList> sleepers = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * 连续碰撞检测的结果缓冲区
+     */
+    private final SweptSphere sweep = new SweptSphere();
+
+    /**
+     * 候选护盾缓冲区
+     */
+    private final List<ShieldRegistry.Entry> candidates = new ArrayList<>();
+
+    /**
+     * 本tick的命中列表（弹射物、护盾实体、碰撞结果）
+     */
+    private Projectile[] hitProjectiles = new Projectile[16];
+    private Entity[] hitShields = new Entity[16];
+    private double[] hitContacts = new double[16 * SweptSphere.SIZE];
+    private int hitCount;
+
+    /**
+     * 性能统计
+     */
+    private final InterceptionStats stats = new InterceptionStats();
+
+    private ShieldInterceptor(ServerLevel level) {
+        this.level = level;
+    }
+
+    /**
+     * 获取维度的弹射物拦截器（不存在时创建）
+     */
+    public static ShieldInterceptor get(ServerLevel level) {
+        return INTERCEPTORS.computeIfAbsent(level, ShieldInterceptor::new);
+    }
+
+    /**
+     * 获取维度的弹射物拦截器（不存在时返回null）
+     */
+    @Nullable
+    public static ShieldInterceptor getIfPresent(Level level) {
+        return level instanceof ServerLevel serverLevel ? INTERCEPTORS.get(serverLevel) : null;
+    }
+
+    /**
+     * 维度卸载时丢弃拦截器
+     */
+    public static void unload(ServerLevel level) {
+        INTERCEPTORS.remove(level);
+    }
+
+    /**
+     * 弹射物加入维度
+     */
+    public void track(Projectile projectile) {
+        tracker.add(projectile);
+    }
+
+    /**
+     * 实体离开维度
+     */
+    public void untrack(Entity entity) {
+        int slot = tracker.find(entity.getId());
+        if (slot >= 0) {
+            removeSlot(slot);
+        }
+    }
+
+    /**
+     * 对维度中的所有弹射物执行一次拦截
+     * 在维度tick开始时调用，此时弹射物还没有移动
+     */
+    public void tick() {
+        if (tracker.isEmpty()) {
+            return;
+        }
+
+        long currentTime = level.getGameTime();
+        ShieldRegistry registry = ShieldRegistry.get(level);
+        stats.beginDetect();
+
+        // 唤醒附近有护盾移动过来的休眠弹射物
+        if (!sleepers.isEmpty()) {
+            List<ShieldRegistry.Entry> changed = registry.changedEntries();
+            for (int i = 0, n = changed.size(); i < n; i++) {
+                wakeNear(changed.get(i));
+            }
+        }
+
+        // 第一遍：宽相位 + 窄相位，只记录命中
+        // 从后往前遍历，移除槽位时被移动过来的弹射物已经处理过了
+        hitCount = 0;
+        int detected = 0;
+        for (int slot = tracker.size() - 1; slot >= 0; slot--) {
+            Projectile projectile = tracker.projectile(slot);
+            if (projectile.isRemoved()) {
+                // 正常情况下离开维度事件已经移除了，这里只是兜底
+                removeSlot(slot);
+                continue;
+            }
+
+            double x = projectile.getX();
+            double y = projectile.getY();
+            double z = projectile.getZ();
+            boolean still = x == tracker.lastX(slot) && y == tracker.lastY(slot) && z == tracker.lastZ(slot);
+            if (tracker.isSleeping(slot)) {
+                if (still) {
+                    continue;
+                }
+                // 弹射物重新开始移动（例如插着的方块被破坏）
+                wake(slot);
+            }
+
+            if (!level.isPositionEntityTicking(projectile.blockPosition())) {
+                continue;
+            }
+
+            detected++;
+            boolean hit = findHit(registry, slot, currentTime);
+            if (still && !hit) {
+                // 静止且没有碰到任何护盾：护盾不移动就永远碰不到它
+                sleep(slot);
+            } else {
+                tracker.setLastPosition(slot, x, y, z);
+            }
+        }
+
+        stats.endDetect(detected);
+
+        // 第二遍：统一应用偏转
+        for (int i = 0; i < hitCount; i++) {
+            Projectile projectile = hitProjectiles[i];
+            Entity entity = hitShields[i];
+            hitProjectiles[i] = null;
+            hitShields[i] = null;
+
+            // 同一个护盾可能在本tick内被前面的弹射物击碎
+            ShieldCapability shield = ShieldCapabilities.getShield(entity);
+            if (shield == null || !shield.isShieldActive() || projectile.isRemoved()) {
+                continue;
+            }
+
+            sweep.load(hitContacts, i * SweptSphere.SIZE);
+            deflectProjectile(projectile, entity, shield, sweep);
+            stats.recordHit();
+
+            int slot = tracker.find(projectile.getId());
+            if (slot >= 0) {
+                tracker.setDeflectTick(slot, currentTime);
+                // 偏转后弹射物的主人变成了护盾的主人
+                tracker.refreshOwner(slot);
+            }
+        }
+        hitCount = 0;
+    }
+
+    /**
+     * 性能统计
+     */
+    public InterceptionStats stats() {
+        return stats;
+    }
+
+    /**
+     * 追踪中的弹射物数量
+     */
+    public int trackedCount() {
+        return tracker.size();
+    }
+
+    /**
+     * 休眠中的弹射物数量
+     */
+    public int sleepingCount() {
+        int count = 0;
+        for (int slot = 0; slot < tracker.size(); slot++) {
+            if (tracker.isSleeping(slot)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 检测弹射物在本tick内最先接触的护盾，并记录到命中列表
+     *
+     * @return 是否命中（或者本tick已经被拦截过）
+     */
+    private boolean findHit(ShieldRegistry registry, int slot, long currentTime) {
+        // 检查是否在同一个tick内已经被拦截过
+        if (tracker.deflectTick(slot) == currentTime) {
+            return true; // 已经在这个tick拦截过了，跳过
+        }
+
+        Projectile projectile = tracker.projectile(slot);
+        Vec3 projectilePos = projectile.position();
+        Vec3 velocity = projectile.getDeltaMovement();
+        double speed = velocity.length();
+
+        // 弹射物本tick路径的包围盒（护盾位置在tick开始时刷新，留出护盾本tick移动的余量）
+        double pathMinX = Math.min(projectilePos.x, projectilePos.x + velocity.x) - ShieldRegistry.MOVE_MARGIN;
+        double pathMinY = Math.min(projectilePos.y, projectilePos.y + velocity.y) - ShieldRegistry.MOVE_MARGIN;
+        double pathMinZ = Math.min(projectilePos.z, projectilePos.z + velocity.z) - ShieldRegistry.MOVE_MARGIN;
+        double pathMaxX = Math.max(projectilePos.x, projectilePos.x + velocity.x) + ShieldRegistry.MOVE_MARGIN;
+        double pathMaxY = Math.max(projectilePos.y, projectilePos.y + velocity.y) + ShieldRegistry.MOVE_MARGIN;
+        double pathMaxZ = Math.max(projectilePos.z, projectilePos.z + velocity.z) + ShieldRegistry.MOVE_MARGIN;
+
+        CandidateCache cache = tracker.candidates(slot);
+        if (!cache.covers(registry, currentTime, pathMinX, pathMinY, pathMinZ, pathMaxX, pathMaxY, pathMaxZ)) {
+            // 缓存失效，重新执行宽相位查询
+            double padding = Mth.clamp((speed + registry.maxSpeed()) * CACHE_TICKS,
+                    MIN_CACHE_PADDING, MAX_CACHE_PADDING);
+            cache.refill(registry, currentTime, pathMinX, pathMinY, pathMinZ, pathMaxX, pathMaxY, pathMaxZ,
+                    padding);
+        }
+
+        candidates.clear();
+        cache.collect(currentTime, pathMinX, pathMinY, pathMinZ, pathMaxX, pathMaxY, pathMaxZ, candidates);
+        if (candidates.isEmpty()) {
+            return false;
+        }
+
+        Entity firstHit = narrowPhase(candidates, projectile, tracker.owner(slot));
+        if (firstHit != null && firstHit == refreshOwner(slot)) {
+            // 主人在缓存之后被改变过（例如火球被打回去），用新的主人重新检测一次
+            firstHit = narrowPhase(candidates, projectile, tracker.owner(slot));
+        }
+
+        if (firstHit == null) {
+            return false;
+        }
+        hitProjectiles[hitCount] = projectile;
+        hitShields[hitCount] = firstHit;
+        hitCount++;
+        return true;
+    }
+
+    /**
+     * 选出弹射物最早接触的护盾，碰撞结果写入命中列表的下一个位置
+     */
+    @Nullable
+    private Entity narrowPhase(List<ShieldRegistry.Entry> candidates, Projectile projectile, @Nullable Entity owner) {
+        Vec3 projectilePos = projectile.position();
+        Vec3 velocity = projectile.getDeltaMovement();
+
+        // 弹射物按球体处理，接触半径 = 护盾半径 + 弹射物半径
+        double projectileRadius = projectile.getBbWidth() / 2;
+
+        Entity firstHit = null;
+        double firstTime = Double.MAX_VALUE;
+        for (int i = 0, n = candidates.size(); i < n; i++) {
+            ShieldRegistry.Entry candidate = candidates.get(i);
+            Entity entity = candidate.entity;
+            // 过滤掉自己的主人
+            if (entity == owner || entity == projectile) {
+                continue;
+            }
+
+            // 连续碰撞检测：同时考虑弹射物和护盾主人在本tick内的运动
+            boolean hit = sweep.sweep(
+                    projectilePos.x, projectilePos.y, projectilePos.z,
+                    velocity.x, velocity.y, velocity.z,
+                    candidate.centerX, candidate.centerY, candidate.centerZ,
+                    candidate.velocityX, candidate.velocityY, candidate.velocityZ,
+                    candidate.radius + projectileRadius);
+            if (hit && sweep.time < firstTime) {
+                firstHit = entity;
+                firstTime = sweep.time;
+                ensureHitCapacity(hitCount + 1);
+                sweep.store(hitContacts, hitCount * SweptSphere.SIZE);
+            }
+        }
+        return firstHit;
+    }
+
+    /**
+     * 重新读取弹射物的主人
+     *
+     * @return 新的主人
+     */
+    @Nullable
+    private Entity refreshOwner(int slot) {
+        tracker.refreshOwner(slot);
+        return tracker.owner(slot);
+    }
+
+    /**
+     * 让弹射物进入休眠
+     * 休眠期间记录的位置保持不变，用来判断是否重新开始移动
+     */
+    private void sleep(int slot) {
+        tracker.setSleeping(slot, true);
+        sleepers.computeIfAbsent(sleepSection(slot), k -> new IntArrayList()).add(tracker.projectile(slot).getId());
+    }
+
+    /**
+     * 唤醒休眠的弹射物
+     */
+    private void wake(int slot) {
+        tracker.setSleeping(slot, false);
+        tracker.candidates(slot).invalidate();
+        long key = sleepSection(slot);
+        IntArrayList bucket = sleepers.get(key);
+        if (bucket != null) {
+            bucket.rem(tracker.projectile(slot).getId());
+            if (bucket.isEmpty()) {
+                sleepers.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 唤醒护盾在下一个tick内可能碰到的休眠弹射物
+     */
+    private void wakeNear(ShieldRegistry.Entry entry) {
+        double speed = Math.sqrt(entry.velocityX * entry.velocityX
+                + entry.velocityY * entry.velocityY
+                + entry.velocityZ * entry.velocityZ);
+        double reach = entry.radius + speed + ShieldRegistry.MOVE_MARGIN;
+        double minX = entry.centerX - reach;
+        double minY = entry.centerY - reach;
+        double minZ = entry.centerZ - reach;
+        double maxX = entry.centerX + reach;
+        double maxY = entry.centerY + reach;
+        double maxZ = entry.centerZ + reach;
+
+        int maxSectionX = SectionPos.blockToSectionCoord(maxX);
+        int maxSectionY = SectionPos.blockToSectionCoord(maxY);
+        int maxSectionZ = SectionPos.blockToSectionCoord(maxZ);
+        for (int sx = SectionPos.blockToSectionCoord(minX); sx <= maxSectionX; sx++) {
+            for (int sy = SectionPos.blockToSectionCoord(minY); sy <= maxSectionY; sy++) {
+                for (int sz = SectionPos.blockToSectionCoord(minZ); sz <= maxSectionZ; sz++) {
+                    long key = SectionPos.asLong(sx, sy, sz);
+                    IntArrayList bucket = sleepers.get(key);
+                    if (bucket == null) {
+                        continue;
+                    }
+                    for (int i = bucket.size() - 1; i >= 0; i--) {
+                        int slot = tracker.find(bucket.getInt(i));
+                        if (slot < 0) {
+                            bucket.removeInt(i);
+                            continue;
+                        }
+                        double x = tracker.lastX(slot);
+                        double y = tracker.lastY(slot);
+                        double z = tracker.lastZ(slot);
+                        if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                            tracker.setSleeping(slot, false);
+                            tracker.candidates(slot).invalidate();
+                            bucket.removeInt(i);
+                        }
+                    }
+                    if (bucket.isEmpty()) {
+                        sleepers.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private long sleepSection(int slot) {
+        return SectionPos.asLong(
+                SectionPos.blockToSectionCoord(tracker.lastX(slot)),
+                SectionPos.blockToSectionCoord(tracker.lastY(slot)),
+                SectionPos.blockToSectionCoord(tracker.lastZ(slot)));
+    }
+
+    /**
+     * 停止追踪槽位上的弹射物
+     */
+    private void removeSlot(int slot) {
+        if (tracker.isSleeping(slot)) {
+            wake(slot);
+        }
+        tracker.removeSlot(slot);
+    }
+
+    private void ensureHitCapacity(int capacity) {
+        if (capacity > hitProjectiles.length) {
+            int newLength = Math.max(capacity, hitProjectiles.length * 2);
+            hitProjectiles = Arrays.copyOf(hitProjectiles, newLength);
+            hitShields = Arrays.copyOf(hitShields, newLength);
+            hitContacts = Arrays.copyOf(hitContacts, newLength * SweptSphere.SIZE);
+        }
+    }
+
+    /**
+     * 偏转弹射物
+     * 支持所有实体类型
+     */
+    private void deflectProjectile(Projectile projectile, Entity entity, ShieldCapability shieldCap,
+            SweptSphere contact) {
+        // 反射方向：碰撞时刻的接触法线
+        Vec3 shieldCenter = new Vec3(contact.centerX, contact.centerY, contact.centerZ);
+        Vec3 deflectDirection = new Vec3(contact.normalX, contact.normalY, contact.normalZ);
+
+        // 计算弹射物与护盾表面的交点
+        double shieldRadius = shieldCap.radius();
+        Vec3 impactPoint = shieldCenter.add(deflectDirection.scale(shieldRadius));
+
+        // 设置弹射物的新速度
+        double speed = projectile.getDeltaMovement().length();
+        Vec3 newVelocity = deflectDirection.scale(speed * 0.8);
+        projectile.setDeltaMovement(newVelocity);
+
+        // 改变弹射物的所有者，避免伤害实体
+        if (projectile.getOwner() != entity) {
+            projectile.setOwner(entity);
+        }
+
+        // 消耗护盾强度
+        if (shieldCap.canConsumeStrength(1)) {
+            ShieldCapability newShield = shieldCap.consumeStrength(1);
+            // 护盾数据在本tick结束时统一同步，一轮箭雨只发送一次
+            ShieldCapabilities.setShield(entity, newShield);
+
+            // 检查护盾是否破碎（强度降到0）
+            if (newShield.strength() == 0) {
+                // 发送破碎效果包到追踪该实体的客户端
+                NetworkHandler.sendShatter(entity,
+                        shieldCenter.x, shieldCenter.y, shieldCenter.z,
+                        shieldCap.radius());
+            }
+        }
+
+        // 记录击中效果，同一个护盾本tick内的所有击中在tick结束时合并发送
+        ShieldImpactQueue.record(entity, contact.normalX, contact.normalY, contact.normalZ);
+
+        // 播放世界音效（所有附近的玩家都能听到）
+        entity.level().playSound(
+                null, // 不指定玩家，让所有附近的人都能听到
+                impactPoint.x, // 音效位置：击中点
+                impactPoint.y,
+                impactPoint.z,
+                SoundEvents.RESPAWN_ANCHOR_DEPLETE, // 音效：能量护盾被击中的声音
+                SoundSource.BLOCKS, // 音效类型
+                0.8f, // 音量
+                1.2f + (float) (Math.random() * 0.2f) // 音调（随机变化）
+        );
+
+    }
+}
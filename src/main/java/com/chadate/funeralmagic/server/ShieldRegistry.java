@@ -0,0 +1,387 @@
+package com.chadate.funeralmagic.server;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.SectionPos;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.level.Level;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+import com.chadate.funeralmagic.capability.ShieldCapability;
+
+/**
+ * 护盾注册表（每个服务端维度一个）
+ *
+ * 记录维度中所有激活的护盾，并按护盾中心所在的区块段（16x16x16）建立空间哈希，
+ * 弹射物拦截时只需要查询路径附近的几个区块段，而不用扫描范围内的所有实体。
+ */
+public class ShieldRegistry {
+
+    private static final Map<ServerLevel, ShieldRegistry> REGISTRIES = new HashMap<>();
+
+    /**
+     * 护盾位置只在每个tick开始时刷新，查询路径时留出护盾在本tick内移动的余量
+     */
+    static final double MOVE_MARGIN = 2.0;
+
+    /**
+     * 所有激活的护盾
+     * Key: 实体ID
+     */
+    private final Int2ObjectMap<Entry> entries = new Int2ObjectOpenHashMap<>();
+
+    /**
+     * 空间哈希
+     * Key: 护盾中心所在区块段的 SectionPos.asLong
+     */
+    private final Long2ObjectMap<Section> sections = new Long2ObjectOpenHashMap<>();
+
+    /**
+     * 维度中最大的护盾半径（只会偏大，不会偏小）
+     * 护盾加入或变大时立即更新，移除或变小后在下一次刷新位置时重新计算
+     */
+    private double maxRadius;
+
+    /**
+     * 本tick内移动过、新加入或半径变大的护盾
+     * 只有这些护盾可能碰到静止的弹射物
+     */
+    private final List<Entry> changed = new ArrayList<>();
+
+    /**
+     * 护盾集合的版本号
+     * 护盾加入、移除或半径变大时递增，缓存的候选护盾列表随之失效
+     */
+    private int version;
+
+    /**
+     * 上一个tick所有护盾中最快的移动距离
+     */
+    private double maxSpeed;
+
+    /**
+     * 获取维度的护盾注册表（不存在时创建）
+     */
+    public static ShieldRegistry get(ServerLevel level) {
+        return REGISTRIES.computeIfAbsent(level, l -> new ShieldRegistry());
+    }
+
+    /**
+     * 获取维度的护盾注册表（不存在时返回null）
+     */
+    @Nullable
+    public static ShieldRegistry getIfPresent(Level level) {
+        return level instanceof ServerLevel serverLevel ? REGISTRIES.get(serverLevel) : null;
+    }
+
+    /**
+     * 维度卸载时丢弃注册表
+     */
+    public static void unload(ServerLevel level) {
+        REGISTRIES.remove(level);
+    }
+
+    /**
+     * 注册表条目：一个激活的护盾
+     */
+    public static final class Entry {
+        public final Entity entity;
+        public double radius;
+        public double centerX;
+        public double centerY;
+        public double centerZ;
+
+        /**
+         * 护盾中心上一个tick的位移，用于预测本tick内护盾的运动
+         */
+        public double velocityX;
+        public double velocityY;
+        public double velocityZ;
+        long sectionKey;
+
+        /**
+         * 上次刷新之后新加入或半径变大
+         */
+        boolean grown;
+
+        Entry(Entity entity) {
+            this.entity = entity;
+        }
+
+        /**
+         * 护盾包围盒是否与给定的包围盒相交
+         */
+        public boolean intersects(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+            return centerX + radius >= minX && centerX - radius <= maxX
+                    && centerY + radius >= minY && centerY - radius <= maxY
+                    && centerZ + radius >= minZ && centerZ - radius <= maxZ;
+        }
+
+        private void updateCenter() {
+            centerX = entity.getX();
+            centerY = entity.getY() + entity.getEyeHeight() / 2;
+            centerZ = entity.getZ();
+        }
+    }
+
+    /**
+     * 区块段：一个哈希桶中的护盾，以及其中最大的护盾半径
+     */
+    private static final class Section {
+        final List<Entry> entries = new ArrayList<>();
+        double maxRadius;
+
+        void add(Entry entry) {
+            entries.add(entry);
+            maxRadius = Math.max(maxRadius, entry.radius);
+        }
+
+        void remove(Entry entry) {
+            entries.remove(entry);
+            recomputeMaxRadius();
+        }
+
+        void recomputeMaxRadius() {
+            double max = 0;
+            for (int i = 0, n = entries.size(); i < n; i++) {
+                max = Math.max(max, entries.get(i).radius);
+            }
+            maxRadius = max;
+        }
+    }
+
+    /**
+     * 护盾数据改变时更新注册表
+     * 激活的护盾会被加入（或更新），未激活的护盾会被移除
+     */
+    public void update(Entity entity, ShieldCapability shield) {
+        if (shield == null || !shield.isShieldActive() || entity.isRemoved()) {
+            remove(entity);
+            return;
+        }
+
+        Entry entry = entries.get(entity.getId());
+        if (entry == null) {
+            // EntityJoinLevelEvent 在实体加入维度的实体表之前触发，这里不能要求实体已经可以查到；
+            // 最终没有加入维度的实体（事件被取消、从未生成）在下一次刷新位置时移除
+            entry = new Entry(entity);
+            entry.radius = shield.radius();
+            entry.updateCenter();
+            entry.sectionKey = sectionKey(entry);
+            entries.put(entity.getId(), entry);
+            addToSection(entry, entry.sectionKey);
+            entry.grown = true;
+            version++;
+        } else if (shield.radius() != entry.radius) {
+            if (shield.radius() > entry.radius) {
+                entry.grown = true;
+                version++;
+            }
+            entry.radius = shield.radius();
+            sections.get(entry.sectionKey).recomputeMaxRadius();
+        }
+        maxRadius = Math.max(maxRadius, entry.radius);
+    }
+
+    /**
+     * 实体的护盾是否已经登记
+     */
+    public boolean contains(Entity entity) {
+        Entry entry = entries.get(entity.getId());
+        return entry != null && entry.entity == entity;
+    }
+
+    /**
+     * 从注册表中移除实体的护盾
+     */
+    public void remove(Entity entity) {
+        Entry entry = entries.remove(entity.getId());
+        if (entry != null) {
+            removeFromSection(entry, entry.sectionKey);
+            version++;
+        }
+    }
+
+    /**
+     * 刷新所有护盾的位置
+     * 每个tick调用一次，只有护盾中心跨越区块段时才需要移动哈希桶
+     * 已经移除或不在维度实体表中的实体在这里清除
+     */
+    public void refreshPositions() {
+        changed.clear();
+        maxSpeed = 0;
+        if (entries.isEmpty()) {
+            maxRadius = 0;
+            return;
+        }
+
+        double newMaxRadius = 0;
+        var iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.entity.isRemoved() || entry.entity.level().getEntity(entry.entity.getId()) != entry.entity) {
+                iterator.remove();
+                removeFromSection(entry, entry.sectionKey);
+                version++;
+                continue;
+            }
+
+            double lastX = entry.centerX;
+            double lastY = entry.centerY;
+            double lastZ = entry.centerZ;
+            entry.updateCenter();
+            entry.velocityX = entry.centerX - lastX;
+            entry.velocityY = entry.centerY - lastY;
+            entry.velocityZ = entry.centerZ - lastZ;
+            if (entry.grown || entry.velocityX != 0 || entry.velocityY != 0 || entry.velocityZ != 0) {
+                changed.add(entry);
+                entry.grown = false;
+                maxSpeed = Math.max(maxSpeed, Math.sqrt(entry.velocityX * entry.velocityX
+                        + entry.velocityY * entry.velocityY
+                        + entry.velocityZ * entry.velocityZ));
+            }
+
+            long newKey = sectionKey(entry);
+            if (newKey != entry.sectionKey) {
+                removeFromSection(entry, entry.sectionKey);
+                entry.sectionKey = newKey;
+                addToSection(entry, newKey);
+            }
+            newMaxRadius = Math.max(newMaxRadius, entry.radius);
+        }
+        maxRadius = newMaxRadius;
+    }
+
+    /**
+     * 查询包围盒与给定包围盒相交的护盾
+     * 只访问护盾中心可能落在"包围盒向外扩展最大护盾半径"范围内的区块段
+     *
+     * @param out 结果追加到这个列表中
+     */
+    public void query(double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+            List<Entry> out) {
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        int minSectionX = SectionPos.blockToSectionCoord(minX - maxRadius);
+        int minSectionY = SectionPos.blockToSectionCoord(minY - maxRadius);
+        int minSectionZ = SectionPos.blockToSectionCoord(minZ - maxRadius);
+        int maxSectionX = SectionPos.blockToSectionCoord(maxX + maxRadius);
+        int maxSectionY = SectionPos.blockToSectionCoord(maxY + maxRadius);
+        int maxSectionZ = SectionPos.blockToSectionCoord(maxZ + maxRadius);
+
+        for (int sx = minSectionX; sx <= maxSectionX; sx++) {
+            for (int sy = minSectionY; sy <= maxSectionY; sy++) {
+                for (int sz = minSectionZ; sz <= maxSectionZ; sz++) {
+                    Section section = sections.get(SectionPos.asLong(sx, sy, sz));
+                    if (section == null) {
+                        continue;
+                    }
+
+                    // 区块段内最大的护盾也够不到查询包围盒时跳过整个区块段
+                    double reach = section.maxRadius;
+                    if (SectionPos.sectionToBlockCoord(sx) - reach > maxX
+                            || SectionPos.sectionToBlockCoord(sx + 1) + reach < minX
+                            || SectionPos.sectionToBlockCoord(sy) - reach > maxY
+                            || SectionPos.sectionToBlockCoord(sy + 1) + reach < minY
+                            || SectionPos.sectionToBlockCoord(sz) - reach > maxZ
+                            || SectionPos.sectionToBlockCoord(sz + 1) + reach < minZ) {
+                        continue;
+                    }
+
+                    List<Entry> bucket = section.entries;
+                    for (int i = 0, n = bucket.size(); i < n; i++) {
+                        Entry entry = bucket.get(i);
+                        // 只保留包围盒与查询包围盒相交的护盾
+                        if (entry.intersects(minX, minY, minZ, maxX, maxY, maxZ)) {
+                            out.add(entry);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取所有激活的护盾
+     */
+    public Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * 本tick内移动过、新加入或半径变大的护盾（在 {@link #refreshPositions()} 中更新）
+     */
+    public List<Entry> changedEntries() {
+        return changed;
+    }
+
+    /**
+     * 护盾集合的版本号
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * 上一个tick所有护盾中最快的移动距离
+     */
+    public double maxSpeed() {
+        return maxSpeed;
+    }
+
+    /**
+     * 维度中最大的护盾半径
+     */
+    public double maxRadius() {
+        return maxRadius;
+    }
+
+    /**
+     * 激活的护盾数量
+     * 护盾激活、停用、耗尽，以及实体卸载、跨维度传送时都会更新
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 维度中激活的护盾数量（客户端维度或者还没有注册表时返回0）
+     */
+    public static int count(Level level) {
+        ShieldRegistry registry = getIfPresent(level);
+        return registry != null ? registry.size() : 0;
+    }
+
+    private void addToSection(Entry entry, long key) {
+        sections.computeIfAbsent(key, k -> new Section()).add(entry);
+    }
+
+    private void removeFromSection(Entry entry, long key) {
+        Section section = sections.get(key);
+        if (section != null) {
+            section.remove(entry);
+            if (section.entries.isEmpty()) {
+                sections.remove(key);
+            }
+        }
+    }
+
+    private static long sectionKey(Entry entry) {
+        return SectionPos.asLong(
+                SectionPos.blockToSectionCoord(entry.centerX),
+                SectionPos.blockToSectionCoord(entry.centerY),
+                SectionPos.blockToSectionCoord(entry.centerZ));
+    }
+}
@@ -0,0 +1,81 @@
+package com.chadate.funeralmagic.server;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.entity.Entity;
+
+import com.chadate.funeralmagic.capability.ShieldCapabilities;
+import com.chadate.funeralmagic.capability.ShieldCapability;
+import com.chadate.funeralmagic.network.PayloadMetrics;
+import com.chadate.funeralmagic.network.ShieldDataSyncPacketV2;
+
+/**
+ * 护盾同步队列
+ *
+ * 服务端修改护盾时只把实体标记为"脏"，在服务器tick结束时统一发送同步包。
+ * 同一个tick内对同一实体的多次修改（例如一轮箭雨连续消耗强度）只会产生一个同步包，携带最终状态。
+ *
+ * 同步经过 {@link ShieldSyncThrottle}，远处的观察者按频率限制接收。
+ */
+public final class ShieldSyncQueue {
+
+    /**
+     * 等待同步的实体（实体ID在整个服务器内唯一）
+     * Key: 实体ID
+     */
+    private static final Int2ObjectLinkedOpenHashMap<Entity> DIRTY = new Int2ObjectLinkedOpenHashMap<>();
+
+    private ShieldSyncQueue() {
+    }
+
+    /**
+     * 标记实体的护盾需要同步
+     */
+    public static void markDirty(Entity entity) {
+        if (DIRTY.put(entity.getId(), entity) != null) {
+            // 本tick内已经标记过，这次修改合并到同一个同步包中
+            PayloadMetrics.recordSuppressed(ShieldDataSyncPacketV2.TYPE);
+        }
+    }
+
+    /**
+     * 发送所有需要同步的护盾数据
+     * 在服务器tick结束时调用
+     */
+    public static void flush(MinecraftServer server) {
+        long tick = server.getTickCount();
+        sendDirty(tick);
+        ShieldSyncThrottle.flush(tick);
+    }
+
+    /**
+     * 发送被标记的护盾
+     */
+    private static void sendDirty(long tick) {
+        if (DIRTY.isEmpty()) {
+            return;
+        }
+
+        for (Entity entity : DIRTY.values()) {
+            // 已经移除的实体客户端也会移除，不需要同步；跨维度的实体会在开始追踪时重新同步
+            if (entity.isRemoved()) {
+                continue;
+            }
+
+            ShieldCapability shield = ShieldCapabilities.getShield(entity);
+            if (shield == null) {
+                shield = ShieldCapability.DEFAULT;
+            }
+            ShieldSyncThrottle.send(entity, shield, tick);
+        }
+        DIRTY.clear();
+    }
+
+    /**
+     * 服务器关闭时丢弃未发送的同步
+     */
+    public static void clear() {
+        DIRTY.clear();
+        ShieldSyncThrottle.clear();
+    }
+}
@@ -0,0 +1,153 @@
+package com.chadate.funeralmagic.server;
+
+import it.unimi.dsi.fastutil.longs.Long2LongMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+
+import com.chadate.funeralmagic.Config;
+import com.chadate.funeralmagic.capability.ShieldCapabilities;
+import com.chadate.funeralmagic.capability.ShieldCapability;
+import com.chadate.funeralmagic.network.NetworkHandler;
+import com.chadate.funeralmagic.network.PayloadMetrics;
+import com.chadate.funeralmagic.network.ShieldDataSyncPacketV2;
+
+/**
+ * 按观察者距离限制护盾同步频率
+ *
+ * 护盾的主人、与护盾实体互相骑乘的玩家，以及距离在 {@link Config#FULL_RATE_SYNC_DISTANCE} 以内的玩家收到每一次变化；
+ * 更远的玩家每 {@link Config#DISTANT_SYNC_INTERVAL} 个tick最多收到一次，期间的变化只保留最新的状态，
+ * 到期时发送实体当时的护盾。护盾停用（包括破碎）总是立即发送，破碎效果包不经过这里。
+ */
+public final class ShieldSyncThrottle {
+
+    /**
+     * 每个 (观察者, 实体) 上次发送护盾状态的tick
+     * Key: {@link #key}
+     */
+    private static final Long2LongOpenHashMap LAST_SENT = new Long2LongOpenHashMap();
+
+    /**
+     * 被推迟的同步，到期时发送最新状态
+     * Key: {@link #key}
+     */
+    private static final Long2ObjectLinkedOpenHashMap<Deferred> DEFERRED = new Long2ObjectLinkedOpenHashMap<>();
+
+    /**
+     * 清理过期发送记录的间隔（tick）
+     */
+    private static final int PRUNE_INTERVAL = 200;
+
+    private ShieldSyncThrottle() {
+    }
+
+    private record Deferred(ServerPlayer player, Entity entity, long dueTick) {
+    }
+
+    /**
+     * 向正在追踪该实体的玩家同步护盾状态，远处的玩家按频率限制发送
+     */
+    public static void send(Entity entity, ShieldCapability shield, long tick) {
+        double fullRateDistance = Config.FULL_RATE_SYNC_DISTANCE.get();
+        double fullRateDistanceSqr = fullRateDistance * fullRateDistance;
+        int interval = Config.DISTANT_SYNC_INTERVAL.get();
+
+        // 本次立即发送的接收者，统计时记为一次发送
+        int compactRecipients = 0;
+        int legacyRecipients = 0;
+        for (ServerPlayer player : NetworkHandler.getTrackingPlayers(entity)) {
+            long key = key(player, entity);
+            int version;
+            if (!shield.isShieldActive()
+                    || interval <= 1
+                    || isImportant(player, entity)
+                    || player.distanceToSqr(entity) <= fullRateDistanceSqr) {
+                version = sendNow(player, entity, shield, key, tick);
+            } else {
+                long last = LAST_SENT.getOrDefault(key, Long.MIN_VALUE);
+                if (last == Long.MIN_VALUE || tick - last >= interval) {
+                    version = sendNow(player, entity, shield, key, tick);
+                } else {
+                    if (!DEFERRED.containsKey(key)) {
+                        // 到期时读取实体的最新护盾，期间的变化都合并到这一次
+                        DEFERRED.put(key, new Deferred(player, entity, last + interval));
+                    } else {
+                        PayloadMetrics.recordSuppressed(ShieldDataSyncPacketV2.TYPE);
+                    }
+                    continue;
+                }
+            }
+
+            if (version == 2) {
+                compactRecipients++;
+            } else if (version == 1) {
+                legacyRecipients++;
+            }
+        }
+        NetworkHandler.recordShieldStateSends(compactRecipients, legacyRecipients);
+    }
+
+    /**
+     * 发送到期的同步
+     * 在服务器tick结束时调用
+     */
+    public static void flush(long tick) {
+        if (!DEFERRED.isEmpty()) {
+            var iterator = DEFERRED.long2ObjectEntrySet().fastIterator();
+            while (iterator.hasNext()) {
+                var mapEntry = iterator.next();
+                Deferred deferred = mapEntry.getValue();
+                if (deferred.dueTick() > tick) {
+                    continue;
+                }
+                iterator.remove();
+
+                if (deferred.player().hasDisconnected() || deferred.entity().isRemoved()
+                        || !NetworkHandler.isTracking(deferred.player(), deferred.entity())) {
+                    continue;
+                }
+                ShieldCapability shield = ShieldCapabilities.getShield(deferred.entity());
+                int version = sendNow(deferred.player(), deferred.entity(),
+                        shield != null ? shield : ShieldCapability.DEFAULT, mapEntry.getLongKey(), tick);
+                NetworkHandler.recordShieldStateSends(version == 2 ? 1 : 0, version == 1 ? 1 : 0);
+            }
+        }
+
+        // 超过间隔的发送记录与没有记录等价，定期清理
+        if (tick % PRUNE_INTERVAL == 0 && !LAST_SENT.isEmpty()) {
+            int interval = Config.DISTANT_SYNC_INTERVAL.get();
+            LAST_SENT.long2LongEntrySet().removeIf((Long2LongMap.Entry e) -> tick - e.getLongValue() >= interval);
+        }
+    }
+
+    /**
+     * 服务器关闭时丢弃所有记录
+     */
+    public static void clear() {
+        LAST_SENT.clear();
+        DEFERRED.clear();
+    }
+
+    /**
+     * @return 使用的协议版本，见 {@link NetworkHandler#sendShieldStateTo}
+     */
+    private static int sendNow(ServerPlayer player, Entity entity, ShieldCapability shield, long key, long tick) {
+        int version = NetworkHandler.sendShieldStateTo(player, entity, shield);
+        LAST_SENT.put(key, tick);
+        DEFERRED.remove(key);
+        return version;
+    }
+
+    /**
+     * 护盾的主人，以及与护盾实体互相骑乘的玩家
+     */
+    private static boolean isImportant(ServerPlayer player, Entity entity) {
+        return player == entity
+                || player.getRootVehicle() == entity.getRootVehicle();
+    }
+
+    private static long key(ServerPlayer player, Entity entity) {
+        return ((long) player.getId() << 32) | (entity.getId() & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,141 @@
+package com.chadate.funeralmagic.server;
+
+/**
+ * 移动球体连续碰撞检测（Continuous Collision Detection）
+ *
+ * 弹射物和护盾在一个tick内都按匀速直线运动处理，
+ * 在护盾的参考系中求解 |d + w·t| = R 的最小根，得到精确的碰撞时间和接触法线。
+ * 一次闭式求解就能覆盖整个tick，快速弹射物不会穿过移动中的护盾。
+ *
+ * 实例保存最近一次命中的结果，可以重复使用以避免分配。
+ */
+public final class SweptSphere {
+
+    private static final double EPSILON = 1.0E-9;
+
+    /**
+     * 一个命中结果展开成 double 数组时占用的长度
+     */
+    public static final int SIZE = 7;
+
+    /**
+     * 碰撞时间，本tick内的比例（0 ~ 1）
+     */
+    public double time;
+
+    /**
+     * 接触法线（单位向量，从护盾中心指向弹射物）
+     */
+    public double normalX;
+    public double normalY;
+    public double normalZ;
+
+    /**
+     * 碰撞时刻的护盾中心
+     */
+    public double centerX;
+    public double centerY;
+    public double centerZ;
+
+    /**
+     * 检测弹射物与护盾在本tick内是否接触
+     *
+     * @param px     弹射物起始位置
+     * @param vx     弹射物本tick的位移
+     * @param cx     护盾起始中心
+     * @param ux     护盾本tick的位移
+     * @param radius 接触半径（护盾半径 + 弹射物半径）
+     * @return 是否在本tick内接触，命中时结果写入本实例
+     */
+    public boolean sweep(double px, double py, double pz,
+            double vx, double vy, double vz,
+            double cx, double cy, double cz,
+            double ux, double uy, double uz,
+            double radius) {
+        // 护盾参考系下的相对位置和相对速度
+        double dx = px - cx;
+        double dy = py - cy;
+        double dz = pz - cz;
+        double wx = vx - ux;
+        double wy = vy - uy;
+        double wz = vz - uz;
+
+        double c = dx * dx + dy * dy + dz * dz - radius * radius;
+        double t;
+        if (c <= 0) {
+            // 起始时已经在护盾内部
+            t = 0;
+        } else {
+            double a = wx * wx + wy * wy + wz * wz;
+            if (a < EPSILON) {
+                return false;
+            }
+            double b = dx * wx + dy * wy + dz * wz;
+            if (b >= 0) {
+                // 正在远离护盾
+                return false;
+            }
+            double discriminant = b * b - a * c;
+            if (discriminant < 0) {
+                return false;
+            }
+            t = (-b - Math.sqrt(discriminant)) / a;
+            if (t > 1) {
+                return false;
+            }
+        }
+
+        double nx = dx + wx * t;
+        double ny = dy + wy * t;
+        double nz = dz + wz * t;
+        double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length < EPSILON) {
+            // 弹射物恰好位于护盾中心，沿相对运动的反方向弹开
+            nx = -wx;
+            ny = -wy;
+            nz = -wz;
+            length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+            if (length < EPSILON) {
+                nx = 0;
+                ny = 1;
+                nz = 0;
+                length = 1;
+            }
+        }
+
+        this.time = t;
+        this.normalX = nx / length;
+        this.normalY = ny / length;
+        this.normalZ = nz / length;
+        this.centerX = cx + ux * t;
+        this.centerY = cy + uy * t;
+        this.centerZ = cz + uz * t;
+        return true;
+    }
+
+    /**
+     * 把命中结果写入数组（批量处理时暂存）
+     */
+    public void store(double[] out, int offset) {
+        out[offset] = time;
+        out[offset + 1] = normalX;
+        out[offset + 2] = normalY;
+        out[offset + 3] = normalZ;
+        out[offset + 4] = centerX;
+        out[offset + 5] = centerY;
+        out[offset + 6] = centerZ;
+    }
+
+    /**
+     * 从数组中读回命中结果
+     */
+    public void load(double[] in, int offset) {
+        time = in[offset];
+        normalX = in[offset + 1];
+        normalY = in[offset + 2];
+        normalZ = in[offset + 3];
+        centerX = in[offset + 4];
+        centerY = in[offset + 5];
+        centerZ = in[offset + 6];
+    }
+}
@@ -0,0 +1,87 @@
+package com.chadate.funeralmagic.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectLinkedOpenHashMap;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.Entity;
+
+import com.chadate.funeralmagic.network.NetworkHandler;
+import com.chadate.funeralmagic.network.PayloadMetrics;
+import com.chadate.funeralmagic.network.ShieldSnapshotPacket;
+
+/**
+ * 开始追踪时的护盾同步队列（按玩家分组）
+ *
+ * 玩家传送或鞘翅飞入新区域时，一个tick内会对成百上千个实体触发 StartTracking。
+ * 这里按玩家收集开始追踪的护盾实体，在服务器tick结束时为每个玩家发送一个 {@link ShieldSnapshotPacket}，
+ * 就像原版把实体生成包打成一个包组一样。发送时读取护盾的最终状态。
+ */
+public final class TrackingSyncQueue {
+
+    /**
+     * 本tick内开始追踪护盾实体的玩家
+     * Key: 玩家的实体ID
+     */
+    private static final Int2ObjectLinkedOpenHashMap<Batch> BATCHES = new Int2ObjectLinkedOpenHashMap<>();
+
+    private TrackingSyncQueue() {
+    }
+
+    /**
+     * 一个玩家在本tick内开始追踪的护盾实体
+     */
+    private static final class Batch {
+        final ServerPlayer player;
+        final List<Entity> entities = new ArrayList<>();
+
+        Batch(ServerPlayer player) {
+            this.player = player;
+        }
+    }
+
+    /**
+     * 记录玩家开始追踪一个有护盾的实体
+     */
+    public static void add(ServerPlayer player, Entity entity) {
+        Batch batch = BATCHES.get(player.getId());
+        if (batch == null || batch.player != player) {
+            batch = new Batch(player);
+            BATCHES.put(player.getId(), batch);
+        } else {
+            // 与本tick内开始追踪的其他实体合并到同一个快照中
+            PayloadMetrics.recordSuppressed(ShieldSnapshotPacket.TYPE);
+        }
+        batch.entities.add(entity);
+    }
+
+    /**
+     * 为每个玩家发送本tick内开始追踪的护盾
+     * 在服务器tick结束时调用
+     */
+    public static void flush() {
+        if (BATCHES.isEmpty()) {
+            return;
+        }
+
+        for (Batch batch : BATCHES.values()) {
+            // 本tick内断开连接的玩家不需要同步
+            if (batch.player.hasDisconnected()) {
+                continue;
+            }
+
+            // 追踪之后又被移除的实体客户端也已经移除
+            batch.entities.removeIf(Entity::isRemoved);
+            NetworkHandler.sendSnapshot(batch.player, batch.entities);
+        }
+        BATCHES.clear();
+    }
+
+    /**
+     * 服务器关闭时丢弃未发送的同步
+     */
+    public static void clear() {
+        BATCHES.clear();
+    }
+}
@@ -0,0 +1,550 @@
+package com.chadate.funeralmagic.tool;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 离线世界压缩工具
+ *
+ * 旧版本会给所有被检查过的实体附加默认护盾，并写入实体区域文件。
+ * 这个工具扫描已停止运行的世界目录下所有 entities/*.mca 文件，
+ * 删除与 ShieldCapability.DEFAULT 相同的护盾附件。有区块变化的区域文件会被紧凑地重新排列并截断，
+ * 文件大小随之减小。
+ *
+ * 工具只依赖JDK，可以直接用模组jar运行：
+ * <pre>
+ * java -cp prismaticshield-1.0.0.jar com.chadate.funeralmagic.tool.ShieldAttachmentCompactor &lt;世界目录&gt; [--dry-run]
+ * </pre>
+ * 运行前请先停止服务器并备份世界。
+ */
+public class ShieldAttachmentCompactor {
+
+    private static final int SECTOR_SIZE = 4096;
+    private static final int HEADER_SIZE = SECTOR_SIZE * 2;
+    private static final int CHUNK_COUNT = 1024;
+
+    private static final byte COMPRESSION_GZIP = 1;
+    private static final byte COMPRESSION_ZLIB = 2;
+    private static final byte COMPRESSION_NONE = 3;
+    private static final int COMPRESSION_EXTERNAL_FLAG = 128;
+
+    private static final String ATTACHMENTS_KEY = "neoforge:attachments";
+    private static final String SHIELD_KEY = "prismaticshield:shield_capability";
+
+    /**
+     * 默认护盾的值，与 ShieldCapability.DEFAULT 保持一致
+     * （工具独立运行，不能加载依赖DFU的 ShieldCapability 类）
+     */
+    private static final boolean DEFAULT_ACTIVE = false;
+    private static final double DEFAULT_RADIUS = 3.0;
+    private static final int DEFAULT_STRENGTH = 100;
+
+    private static final int MAX_NBT_DEPTH = 512;
+
+    private final boolean dryRun;
+
+    private long filesScanned;
+    private long chunksScanned;
+    private long chunksRewritten;
+    private long chunksSkipped;
+    private long attachmentsRemoved;
+    private long bytesBefore;
+    private long bytesAfter;
+    private long fileBytesBefore;
+    private long fileBytesAfter;
+
+    public ShieldAttachmentCompactor(boolean dryRun) {
+        this.dryRun = dryRun;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path worldDir = null;
+        boolean dryRun = false;
+        for (String arg : args) {
+            if (arg.equals("--dry-run")) {
+                dryRun = true;
+            } else if (worldDir == null) {
+                worldDir = Paths.get(arg);
+            }
+        }
+
+        if (worldDir == null || !Files.isDirectory(worldDir)) {
+            System.err.println("用法: ShieldAttachmentCompactor <世界目录> [--dry-run]");
+            System.exit(1);
+            return;
+        }
+
+        ShieldAttachmentCompactor compactor = new ShieldAttachmentCompactor(dryRun);
+        compactor.compactWorld(worldDir);
+        compactor.printReport();
+    }
+
+    /**
+     * 压缩世界中所有维度的实体区域文件
+     */
+    public void compactWorld(Path worldDir) throws IOException {
+        List<Path> regionFiles;
+        try (Stream<Path> paths = Files.walk(worldDir)) {
+            regionFiles = paths
+                    .filter(path -> path.getFileName().toString().endsWith(".mca"))
+                    .filter(path -> path.getParent() != null
+                            && path.getParent().getFileName().toString().equals("entities"))
+                    .toList();
+        }
+
+        for (Path regionFile : regionFiles) {
+            compactRegionFile(regionFile);
+        }
+    }
+
+    /**
+     * 压缩单个区域文件
+     * 逐个区块读取，删除了护盾附件的区块重新压缩；只要有区块变化，整个文件就按区块顺序
+     * 从第2个扇区开始紧凑地重新排列并截断，释放旧数据留下的空闲扇区
+     */
+    public void compactRegionFile(Path regionFile) throws IOException {
+        filesScanned++;
+        long fileRewritten = 0;
+
+        int[] locations = new int[CHUNK_COUNT];
+        int[] timestamps = new int[CHUNK_COUNT];
+        // 重写后的区块数据（长度、压缩类型和压缩后的NBT），没有变化的区块为null
+        byte[][] rewritten = new byte[CHUNK_COUNT][];
+        long sizeBefore;
+
+        try (FileChannel channel = FileChannel.open(regionFile, StandardOpenOption.READ)) {
+            sizeBefore = channel.size();
+            if (sizeBefore < HEADER_SIZE) {
+                return;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+
+            ByteBuffer chunkHeader = ByteBuffer.allocate(5);
+            for (int index = 0; index < CHUNK_COUNT; index++) {
+                int location = header.getInt(index * 4);
+                locations[index] = location;
+                timestamps[index] = header.getInt(SECTOR_SIZE + index * 4);
+                int sectorOffset = location >>> 8;
+                int sectorCount = location & 0xFF;
+                if (sectorOffset < 2 || sectorCount == 0) {
+                    continue;
+                }
+                chunksScanned++;
+
+                long position = (long) sectorOffset * SECTOR_SIZE;
+                chunkHeader.clear();
+                if (readFully(channel, chunkHeader, position) < 5) {
+                    chunksSkipped++;
+                    continue;
+                }
+                chunkHeader.flip();
+                int length = chunkHeader.getInt();
+                byte compression = chunkHeader.get();
+
+                // 外部 .mcc 文件和不支持的压缩格式（如LZ4）保持原样
+                // 长度字段本身的4字节也占用扇区，数据不能超出 sectorCount 个扇区
+                if ((compression & COMPRESSION_EXTERNAL_FLAG) != 0 || length <= 1
+                        || (long) length + 4 > (long) sectorCount * SECTOR_SIZE || !isSupported(compression)) {
+                    chunksSkipped++;
+                    continue;
+                }
+
+                ByteBuffer payload = ByteBuffer.allocate(length - 1);
+                readFully(channel, payload, position + 5);
+
+                Map<String, Object> root;
+                try (DataInputStream in = new DataInputStream(
+                        decompress(compression, new ByteArrayInputStream(payload.array())))) {
+                    root = readRoot(in);
+                } catch (IOException e) {
+                    System.err.println("无法读取区块 " + index + " (" + regionFile + "): " + e.getMessage());
+                    chunksSkipped++;
+                    continue;
+                }
+
+                int removed = stripDefaultShields(root);
+                if (removed == 0) {
+                    continue;
+                }
+
+                byte[] compressed = compress(compression, root);
+                if (sectorsFor(compressed.length + 5) > 255) {
+                    chunksSkipped++;
+                    continue;
+                }
+
+                attachmentsRemoved += removed;
+                chunksRewritten++;
+                bytesBefore += length - 1;
+                bytesAfter += compressed.length;
+                fileRewritten++;
+
+                ByteBuffer data = ByteBuffer.allocate(compressed.length + 5);
+                data.putInt(compressed.length + 1);
+                data.put(compression);
+                data.put(compressed);
+                rewritten[index] = data.array();
+            }
+        }
+
+        if (fileRewritten == 0) {
+            return;
+        }
+
+        // 紧凑排列后的文件大小：两个头部扇区加上每个区块占用的扇区
+        long sectors = 2;
+        for (int index = 0; index < CHUNK_COUNT; index++) {
+            int sectorCount = locations[index] & 0xFF;
+            if ((locations[index] >>> 8) < 2 || sectorCount == 0) {
+                continue;
+            }
+            sectors += rewritten[index] != null ? sectorsFor(rewritten[index].length) : sectorCount;
+        }
+        long sizeAfter = sectors * SECTOR_SIZE;
+        fileBytesBefore += sizeBefore;
+        fileBytesAfter += sizeAfter;
+
+        if (!dryRun) {
+            repack(regionFile, locations, timestamps, rewritten);
+        }
+        System.out.println(regionFile + ": " + (dryRun ? "可重写 " : "已重写 ") + fileRewritten + " 个区块，文件 "
+                + sizeBefore + " -> " + sizeAfter + " 字节");
+    }
+
+    /**
+     * 把区域文件按区块顺序紧凑地重新排列
+     * 先写入同目录下的临时文件，完成后替换原文件，中途失败不会损坏原文件
+     */
+    private static void repack(Path regionFile, int[] locations, int[] timestamps, byte[][] rewritten)
+            throws IOException {
+        Path temp = regionFile.resolveSibling(regionFile.getFileName() + ".compact");
+        int now = (int) (System.currentTimeMillis() / 1000L);
+
+        try (FileChannel in = FileChannel.open(regionFile, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            int nextSector = 2;
+            for (int index = 0; index < CHUNK_COUNT; index++) {
+                int sectorOffset = locations[index] >>> 8;
+                int sectorCount = locations[index] & 0xFF;
+                if (sectorOffset < 2 || sectorCount == 0) {
+                    continue;
+                }
+
+                ByteBuffer data;
+                if (rewritten[index] != null) {
+                    sectorCount = sectorsFor(rewritten[index].length);
+                    data = ByteBuffer.allocate(sectorCount * SECTOR_SIZE);
+                    data.put(rewritten[index]);
+                    header.putInt(SECTOR_SIZE + index * 4, now);
+                } else {
+                    // 没有变化的区块（包括跳过的区块）按原来的扇区原样复制
+                    data = ByteBuffer.allocate(sectorCount * SECTOR_SIZE);
+                    readFully(in, data, (long) sectorOffset * SECTOR_SIZE);
+                    header.putInt(SECTOR_SIZE + index * 4, timestamps[index]);
+                }
+                data.clear();
+                writeFully(out, data, (long) nextSector * SECTOR_SIZE);
+                header.putInt(index * 4, (nextSector << 8) | sectorCount);
+                nextSector += sectorCount;
+            }
+
+            writeFully(out, header, 0);
+            out.force(true);
+        }
+
+        Files.move(temp, regionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int sectorsFor(int bytes) {
+        return (bytes + SECTOR_SIZE - 1) / SECTOR_SIZE;
+    }
+
+    /**
+     * 打印压缩结果
+     */
+    public void printReport() {
+        System.out.println("扫描区域文件: " + filesScanned);
+        System.out.println("扫描区块: " + chunksScanned + "（跳过 " + chunksSkipped + "）");
+        System.out.println((dryRun ? "可重写区块: " : "重写区块: ") + chunksRewritten);
+        System.out.println("删除默认护盾附件: " + attachmentsRemoved);
+        System.out.println("区块数据（压缩后）: " + bytesBefore + " -> " + bytesAfter + " 字节");
+        System.out.println((dryRun ? "区域文件（预计）: " : "区域文件: ") + fileBytesBefore + " -> " + fileBytesAfter
+                + " 字节（节省 " + (fileBytesBefore - fileBytesAfter) + " 字节）");
+    }
+
+    /**
+     * 删除区块中所有实体（包括乘客）上的默认护盾附件
+     *
+     * @return 删除的附件数量
+     */
+    @SuppressWarnings("unchecked")
+    static int stripDefaultShields(Map<String, Object> chunk) {
+        if (!(chunk.get("Entities") instanceof NbtList entities)) {
+            return 0;
+        }
+
+        int removed = 0;
+        for (Object element : entities.elements) {
+            if (element instanceof Map<?, ?> entity) {
+                removed += stripEntity((Map<String, Object>) entity);
+            }
+        }
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int stripEntity(Map<String, Object> entity) {
+        int removed = 0;
+
+        if (entity.get(ATTACHMENTS_KEY) instanceof Map<?, ?> attachments
+                && attachments.get(SHIELD_KEY) instanceof Map<?, ?> shield
+                && isDefaultShield((Map<String, Object>) shield)) {
+            attachments.remove(SHIELD_KEY);
+            if (attachments.isEmpty()) {
+                entity.remove(ATTACHMENTS_KEY);
+            }
+            removed++;
+        }
+
+        if (entity.get("Passengers") instanceof NbtList passengers) {
+            for (Object passenger : passengers.elements) {
+                if (passenger instanceof Map<?, ?> passengerEntity) {
+                    removed += stripEntity((Map<String, Object>) passengerEntity);
+                }
+            }
+        }
+        return removed;
+    }
+
+    private static boolean isDefaultShield(Map<String, Object> shield) {
+        return shield.get("active") instanceof Byte active && (active != 0) == DEFAULT_ACTIVE
+                && shield.get("radius") instanceof Double radius && radius == DEFAULT_RADIUS
+                && shield.get("strength") instanceof Integer strength && strength == DEFAULT_STRENGTH;
+    }
+
+    // === 区域文件读写 ===
+
+    private static boolean isSupported(byte compression) {
+        return compression == COMPRESSION_GZIP || compression == COMPRESSION_ZLIB || compression == COMPRESSION_NONE;
+    }
+
+    private static InputStream decompress(byte compression, InputStream in) throws IOException {
+        return switch (compression) {
+            case COMPRESSION_GZIP -> new GZIPInputStream(in);
+            case COMPRESSION_ZLIB -> new InflaterInputStream(in);
+            default -> in;
+        };
+    }
+
+    private static byte[] compress(byte compression, Map<String, Object> root) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        OutputStream out = switch (compression) {
+            case COMPRESSION_GZIP -> new GZIPOutputStream(bytes);
+            case COMPRESSION_ZLIB -> new DeflaterOutputStream(bytes);
+            default -> bytes;
+        };
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            writeRoot(data, root);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            total += channel.write(buffer, position + total);
+        }
+    }
+
+    // === 最小NBT实现（只用于本工具）===
+
+    /**
+     * NBT列表：需要记录元素类型，空列表写回时才能保持原样
+     */
+    static final class NbtList {
+        final byte elementType;
+        final List<Object> elements;
+
+        NbtList(byte elementType, List<Object> elements) {
+            this.elementType = elementType;
+            this.elements = elements;
+        }
+    }
+
+    private static Map<String, Object> readRoot(DataInput in) throws IOException {
+        byte type = in.readByte();
+        if (type != 10) {
+            throw new IOException("根标签不是Compound: " + type);
+        }
+        in.readUTF();
+        return readCompound(in, 0);
+    }
+
+    private static void writeRoot(DataOutput out, Map<String, Object> root) throws IOException {
+        out.writeByte(10);
+        out.writeUTF("");
+        writeCompound(out, root);
+    }
+
+    private static Map<String, Object> readCompound(DataInput in, int depth) throws IOException {
+        Map<String, Object> compound = new LinkedHashMap<>();
+        byte type;
+        while ((type = in.readByte()) != 0) {
+            String name = in.readUTF();
+            compound.put(name, readPayload(in, type, depth + 1));
+        }
+        return compound;
+    }
+
+    private static Object readPayload(DataInput in, byte type, int depth) throws IOException {
+        if (depth > MAX_NBT_DEPTH) {
+            throw new IOException("NBT嵌套过深");
+        }
+        switch (type) {
+            case 1: return in.readByte();
+            case 2: return in.readShort();
+            case 3: return in.readInt();
+            case 4: return in.readLong();
+            case 5: return in.readFloat();
+            case 6: return in.readDouble();
+            case 7: {
+                byte[] array = new byte[in.readInt()];
+                in.readFully(array);
+                return array;
+            }
+            case 8: return in.readUTF();
+            case 9: {
+                byte elementType = in.readByte();
+                int size = in.readInt();
+                List<Object> elements = new ArrayList<>(Math.max(0, size));
+                for (int i = 0; i < size; i++) {
+                    elements.add(readPayload(in, elementType, depth + 1));
+                }
+                return new NbtList(elementType, elements);
+            }
+            case 10: return readCompound(in, depth);
+            case 11: {
+                int[] array = new int[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readInt();
+                }
+                return array;
+            }
+            case 12: {
+                long[] array = new long[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readLong();
+                }
+                return array;
+            }
+            default: throw new IOException("未知的NBT类型: " + type);
+        }
+    }
+
+    private static void writeCompound(DataOutput out, Map<String, Object> compound) throws IOException {
+        for (Map.Entry<String, Object> entry : compound.entrySet()) {
+            out.writeByte(typeOf(entry.getValue()));
+            out.writeUTF(entry.getKey());
+            writePayload(out, entry.getValue());
+        }
+        out.writeByte(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writePayload(DataOutput out, Object value) throws IOException {
+        if (value instanceof Byte b) {
+            out.writeByte(b);
+        } else if (value instanceof Short s) {
+            out.writeShort(s);
+        } else if (value instanceof Integer i) {
+            out.writeInt(i);
+        } else if (value instanceof Long l) {
+            out.writeLong(l);
+        } else if (value instanceof Float f) {
+            out.writeFloat(f);
+        } else if (value instanceof Double d) {
+            out.writeDouble(d);
+        } else if (value instanceof byte[] array) {
+            out.writeInt(array.length);
+            out.write(array);
+        } else if (value instanceof String s) {
+            out.writeUTF(s);
+        } else if (value instanceof NbtList list) {
+            out.writeByte(list.elementType);
+            out.writeInt(list.elements.size());
+            for (Object element : list.elements) {
+                writePayload(out, element);
+            }
+        } else if (value instanceof Map<?, ?> map) {
+            writeCompound(out, (Map<String, Object>) map);
+        } else if (value instanceof int[] array) {
+            out.writeInt(array.length);
+            for (int i : array) {
+                out.writeInt(i);
+            }
+        } else if (value instanceof long[] array) {
+            out.writeInt(array.length);
+            for (long l : array) {
+                out.writeLong(l);
+            }
+        } else {
+            throw new IOException("无法写入的NBT值: " + value);
+        }
+    }
+
+    private static byte typeOf(Object value) throws IOException {
+        if (value instanceof Byte) return 1;
+        if (value instanceof Short) return 2;
+        if (value instanceof Integer) return 3;
+        if (value instanceof Long) return 4;
+        if (value instanceof Float) return 5;
+        if (value instanceof Double) return 6;
+        if (value instanceof byte[]) return 7;
+        if (value instanceof String) return 8;
+        if (value instanceof NbtList) return 9;
+        if (value instanceof Map) return 10;
+        if (value instanceof int[]) return 11;
+        if (value instanceof long[]) return 12;
+        throw new IOException("无法写入的NBT值: " + value);
+    }
+}
@@ -2,11 +2,8 @@ package com.chadate.funeralmagic.util;
 
 import com.chadate.funeralmagic.capability.ShieldCapabilities;
 import com.chadate.funeralmagic.capability.ShieldCapability;
-import com.chadate.funeralmagic.network.ShieldDataSyncPacket;
 
-import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.player.Player;
-import net.neoforged.neoforge.network.PacketDistributor;
 
 /**
  * 护盾管理器工具类
@@ -19,8 +16,7 @@ public class ShieldManager {
     public static void activateShield(Player player) {
         ShieldCapability shield = player.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
         ShieldCapability newShield = shield.withActive(true);
-        player.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-        syncToClient(player, newShield);
+        ShieldCapabilities.setShield(player, newShield);
     }
     
     /**
@@ -29,8 +25,7 @@ public class ShieldManager {
     public static void deactivateShield(Player player) {
         ShieldCapability shield = player.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
         ShieldCapability newShield = shield.withActive(false);
-        player.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-        syncToClient(player, newShield);
+        ShieldCapabilities.setShield(player, newShield);
     }
     
     /**
@@ -39,8 +34,7 @@ public class ShieldManager {
     public static void toggleShield(Player player) {
         ShieldCapability shield = player.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
         ShieldCapability newShield = shield.withActive(!shield.isShieldActive());
-        player.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-        syncToClient(player, newShield);
+        ShieldCapabilities.setShield(player, newShield);
     }
     
     /**
@@ -49,8 +43,7 @@ public class ShieldManager {
     public static void setShieldRadius(Player player, double radius) {
         ShieldCapability shield = player.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
         ShieldCapability newShield = shield.withRadius(radius);
-        player.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-        syncToClient(player, newShield);
+        ShieldCapabilities.setShield(player, newShield);
     }
     
     /**
@@ -59,15 +52,17 @@ public class ShieldManager {
     public static void setShieldStrength(Player player, int strength) {
         ShieldCapability shield = player.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
         ShieldCapability newShield = shield.withStrength(strength);
-        player.setData(ShieldCapabilities.SHIELD_ATTACHMENT, newShield);
-        syncToClient(player, newShield);
+        ShieldCapabilities.setShield(player, newShield);
     }
     
     /**
      * 获取护盾信息
      */
     public static String getShieldInfo(Player player) {
-        ShieldCapability shield = player.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
+        ShieldCapability shield = ShieldCapabilities.getShield(player);
+        if (shield == null) {
+            shield = ShieldCapability.DEFAULT;
+        }
         return String.format("护盾状态: %s, 半径: %.1f, 强度: %d",
             shield.isShieldActive() ? "激活" : "未激活",
             shield.radius(),
@@ -78,22 +73,6 @@ public class ShieldManager {
      * 检查玩家是否拥有激活的护盾
      */
     public static boolean hasActiveShield(Player player) {
-        ShieldCapability shield = player.getData(ShieldCapabilities.SHIELD_ATTACHMENT);
-        return shield.isShieldActive();
-    }
-    
-    /**
-     * 同步护盾数据到所有客户端
-     */
-    private static void syncToClient(Player player, ShieldCapability shield) {
-        if (player instanceof ServerPlayer serverPlayer) {
-            ShieldDataSyncPacket packet = new ShieldDataSyncPacket(
-                serverPlayer.getId(),
-                shield.active(),
-                shield.radius(),
-                shield.strength()
-            );
-            PacketDistributor.sendToAllPlayers(packet);
-        }
+        return ShieldCapabilities.hasActiveShield(player);
     }
 }